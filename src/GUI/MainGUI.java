@@ -3,6 +3,11 @@ package GUI;
 import model.Employee;
 import model.Person;
 import model.Student;
+import repository.Keyset;
+import repository.OptimisticLockException;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
 import service.EmployeeService;
 import service.PersonService;
 import service.StatisticsService;
@@ -18,9 +23,9 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
-import java.time.LocalDate;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -43,6 +48,23 @@ public class MainGUI extends JFrame {
 	private String sortBy = "id";
 	private boolean asc = true;
 
+	// paginacja keyset: kursor początku każdej odwiedzonej strony (indeks = page,
+	// null = pierwsza strona) oraz kursor strony następnej z ostatniego ładowania
+	private final List<Keyset> pageStarts = new ArrayList<>(Collections.singletonList(null));
+	private Keyset nextStart;
+	// id -> version wierszy bieżącej strony (kontrola wersji przy usuwaniu)
+	private final Map<Integer, Integer> rowVersions = new HashMap<>();
+	// trwające ładowanie strony - anulowane (razem z zapytaniem), gdy zacznie się następne
+	private CompletableFuture<?> pendingLoad;
+
+	// kolumny bazy odpowiadające kolumnom tabeli (projekcja + sortowanie po
+	// kliknięciu nagłówka)
+	private static final String[] PERSON_COLUMNS = { "id", "name", "surname", "age", "date_of_birth", "start_date" };
+	private static final String[] EMPLOYEE_COLUMNS = { "id", "name", "surname", "age", "date_of_birth", "start_date",
+			"salary", "position" };
+	private static final String[] STUDENT_COLUMNS = { "id", "name", "surname", "age", "date_of_birth", "start_date",
+			"university", "year" };
+
 	// komponenty które chcemy kontrolować zależnie od roli
 	private JLabel lblCurrentUser;
 	private JButton btnAdd;
@@ -214,19 +236,24 @@ public class MainGUI extends JFrame {
 		// Listeners / actions
 		cbEntity.addActionListener(e -> {
 			currentEntity = (String) cbEntity.getSelectedItem();
-			page = 0;
+			resetPaging();
 			loadData();
 		});
 
 		btnPrev.addActionListener(e -> {
 			if (page > 0) {
+				pageStarts.remove(page);
 				page--;
 				loadData();
 			}
 		});
 		btnNext.addActionListener(e -> {
-			page++;
-			loadData();
+			if (nextStart != null) {
+				page++;
+				pageStarts.add(nextStart);
+				nextStart = null;
+				loadData();
+			}
 		});
 
 		btnAdd.addActionListener(e -> onAdd());
@@ -249,10 +276,12 @@ public class MainGUI extends JFrame {
 			@Override
 			public void mouseClicked(java.awt.event.MouseEvent e) {
 				int col = table.columnAtPoint(e.getPoint());
-				if (col >= 0) {
-					String name = table.getColumnName(col);
-					sortBy = name.toLowerCase();
+				String[] columns = columnsFor(currentEntity);
+				if (col >= 0 && col < columns.length) {
+					sortBy = columns[col];
 					asc = !asc;
+					// kursory keyset są ważne tylko dla danego sortowania
+					resetPaging();
 					loadData();
 				}
 			}
@@ -497,45 +526,44 @@ public class MainGUI extends JFrame {
 
 	/**
 	 * Ładuje dane odpowiedniej encji (asynchronicznie) oraz aktualizuje paginację.
+	 * Tylko na EDT - pendingLoad i stan paginacji nie są współdzielone z
+	 * wątkami DB (callbacki future wracają tu przez invokeLater).
 	 */
 	private void loadData() {
+		if (pendingLoad != null)
+			pendingLoad.cancel(true);
 		switch (currentEntity) {
 		case "PERSON" -> {
-			personService.count().thenAccept(total -> SwingUtilities.invokeLater(() -> updatePaginationControls(total)))
-					.exceptionally(ex -> {
-						LoggerUtil.error("Count persons failed", ex);
-						return null;
-					});
-
-			personService.findAll(page, size, sortBy, asc).thenAccept(list -> {
-				LoggerUtil.info("Loaded " + list.size() + " persons from DB (page=" + page + ")");
-				SwingUtilities.invokeLater(() -> updateTableForPersons(list));
+			CompletableFuture<Page<RowView>> load = personService.findRows(withVersion(PERSON_COLUMNS), currentPageRequest());
+			pendingLoad = load;
+			load.thenAccept(result -> {
+				LoggerUtil.info("Loaded " + result.getContent().size() + " persons from DB (page=" + page + ")");
+				SwingUtilities.invokeLater(() -> {
+					updateTableForPersons(result.getContent());
+					onPageLoaded(result);
+				});
 			}).exceptionally(ex -> handleLoadError("person", ex));
 		}
 		case "EMPLOYEE" -> {
-			employeeService.count()
-					.thenAccept(total -> SwingUtilities.invokeLater(() -> updatePaginationControls(total)))
-					.exceptionally(ex -> {
-						LoggerUtil.error("Count employees failed", ex);
-						return null;
-					});
-
-			employeeService.findAll(page, size, sortBy, asc).thenAccept(list -> {
-				LoggerUtil.info("Loaded " + list.size() + " employees from DB (page=" + page + ")");
-				SwingUtilities.invokeLater(() -> updateTableForEmployees(list));
+			CompletableFuture<Page<RowView>> load = employeeService.findRows(withVersion(EMPLOYEE_COLUMNS), currentPageRequest());
+			pendingLoad = load;
+			load.thenAccept(result -> {
+				LoggerUtil.info("Loaded " + result.getContent().size() + " employees from DB (page=" + page + ")");
+				SwingUtilities.invokeLater(() -> {
+					updateTableForEmployees(result.getContent());
+					onPageLoaded(result);
+				});
 			}).exceptionally(ex -> handleLoadError("employee", ex));
 		}
 		case "STUDENT" -> {
-			studentService.count()
-					.thenAccept(total -> SwingUtilities.invokeLater(() -> updatePaginationControls(total)))
-					.exceptionally(ex -> {
-						LoggerUtil.error("Count students failed", ex);
-						return null;
-					});
-
-			studentService.findAll(page, size, sortBy, asc).thenAccept(list -> {
-				LoggerUtil.info("Loaded " + list.size() + " students from DB (page=" + page + ")");
-				SwingUtilities.invokeLater(() -> updateTableForStudents(list));
+			CompletableFuture<Page<RowView>> load = studentService.findRows(withVersion(STUDENT_COLUMNS), currentPageRequest());
+			pendingLoad = load;
+			load.thenAccept(result -> {
+				LoggerUtil.info("Loaded " + result.getContent().size() + " students from DB (page=" + page + ")");
+				SwingUtilities.invokeLater(() -> {
+					updateTableForStudents(result.getContent());
+					onPageLoaded(result);
+				});
 			}).exceptionally(ex -> handleLoadError("student", ex));
 		}
 		default -> LoggerUtil.warn("Nieznany typ encji: " + currentEntity);
@@ -543,15 +571,50 @@ public class MainGUI extends JFrame {
 		updateWindowTitle();
 	}
 
-	private void updatePaginationControls(long totalRecords) {
+	// total przychodzi razem ze stroną - bez osobnego count() przy każdym przeładowaniu
+	private PageRequest currentPageRequest() {
+		return PageRequest.first(size, sortBy, asc).withTotal().after(pageStarts.get(page));
+	}
+
+	private void resetPaging() {
+		page = 0;
+		pageStarts.clear();
+		pageStarts.add(null);
+		nextStart = null;
+	}
+
+	private void onPageLoaded(Page<?> result) {
+		if (result.hasTotal() && !updatePaginationControls(result.getTotal()))
+			return;
+		nextStart = result.getNext();
+		btnNext.setEnabled(result.hasNext());
+		btnPrev.setEnabled(page > 0);
+	}
+
+	/** Zwraca false, gdy bieżąca strona wypadła poza zakres i dane są przeładowywane */
+	private boolean updatePaginationControls(long totalRecords) {
 		int maxPage = Math.max(0, (int) ((totalRecords - 1) / size));
-		if (page > maxPage)
-			page = maxPage;
+		if (page > maxPage) {
+			// rekordy zniknęły (np. usunięte) - kursory przestały pasować, wracamy na początek
+			resetPaging();
+			loadData();
+			return false;
+		}
 		btnPrev.setEnabled(page > 0);
-		btnNext.setEnabled(page < maxPage);
+		return true;
+	}
+
+	private static String[] columnsFor(String entity) {
+		return switch (entity) {
+		case "EMPLOYEE" -> EMPLOYEE_COLUMNS;
+		case "STUDENT" -> STUDENT_COLUMNS;
+		default -> PERSON_COLUMNS;
+		};
 	}
 
 	private Void handleLoadError(String what, Throwable ex) {
+		if (ex instanceof CancellationException || ex.getCause() instanceof CancellationException)
+			return null; // zastąpione nowszym ładowaniem
 		LoggerUtil.error("Failed to load " + what, ex);
 		SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
 				LocalizationManager.getString("ui.load.error", what) + ": " + ex.getMessage()));
@@ -559,83 +622,71 @@ public class MainGUI extends JFrame {
 	}
 
 	// ===== update table methods (UI on EDT) =====
-	private void updateTableForPersons(List<Person> list) {
+	private void updateTableForPersons(List<RowView> list) {
 		String[] cols = new String[] { "id", LocalizationManager.getString("person.field.name"),
 				LocalizationManager.getString("person.field.surname"),
 				LocalizationManager.getString("person.field.age"), LocalizationManager.getString("person.field.dob"),
 				LocalizationManager.getString("person.field.start") };
-		tableModel.setDataVector(toTableDataForPersons(list), cols);
+		tableModel.setDataVector(toTableData(list), cols);
 	}
 
-	private void updateTableForEmployees(List<Employee> list) {
+	private void updateTableForEmployees(List<RowView> list) {
 		String[] cols = new String[] { "id", LocalizationManager.getString("person.field.name"),
 				LocalizationManager.getString("person.field.surname"),
 				LocalizationManager.getString("person.field.age"), LocalizationManager.getString("person.field.dob"),
 				LocalizationManager.getString("person.field.start"),
 				LocalizationManager.getString("employee.field.salary"),
 				LocalizationManager.getString("employee.field.position") };
-		tableModel.setDataVector(toTableDataForEmployees(list), cols);
+		tableModel.setDataVector(toTableData(list), cols);
 	}
 
-	private void updateTableForStudents(List<Student> list) {
+	private void updateTableForStudents(List<RowView> list) {
 		String[] cols = new String[] { "id", LocalizationManager.getString("person.field.name"),
 				LocalizationManager.getString("person.field.surname"),
 				LocalizationManager.getString("person.field.age"), LocalizationManager.getString("person.field.dob"),
 				LocalizationManager.getString("person.field.start"),
 				LocalizationManager.getString("student.field.university"),
 				LocalizationManager.getString("student.field.year") };
-		tableModel.setDataVector(toTableDataForStudents(list), cols);
+		tableModel.setDataVector(toTableData(list), cols);
 	}
 
 	// ===== converters =====
-	private Object[][] toTableDataForPersons(List<Person> list) {
-		Object[][] data = new Object[list.size()][6];
+	// wiersze projekcji mają już kolumny w kolejności tabeli (daty jako tekst)
+	// ostatnia kolumna projekcji to version - trafia do rowVersions, nie do tabeli
+	private Object[][] toTableData(List<RowView> list) {
+		rowVersions.clear();
+		Object[][] data = new Object[list.size()][];
 		for (int i = 0; i < list.size(); i++) {
-			Person p = list.get(i);
-			data[i][0] = p.getId();
-			data[i][1] = p.getName();
-			data[i][2] = p.getSurname();
-			data[i][3] = p.getAge();
-			data[i][4] = formatDate(p.getDateOfBirth());
-			data[i][5] = formatDate(p.getStartDate());
+			RowView row = list.get(i);
+			int last = row.size() - 1;
+			rowVersions.put(row.getInt(0), row.getInt(last));
+			data[i] = Arrays.copyOf(row.toArray(), last);
 		}
 		return data;
 	}
 
-	private Object[][] toTableDataForEmployees(List<Employee> list) {
-		Object[][] data = new Object[list.size()][8];
-		for (int i = 0; i < list.size(); i++) {
-			Employee e = list.get(i);
-			data[i][0] = e.getId();
-			data[i][1] = e.getName();
-			data[i][2] = e.getSurname();
-			data[i][3] = e.getAge();
-			data[i][4] = formatDate(e.getDateOfBirth());
-			data[i][5] = formatDate(e.getStartDate());
-			data[i][6] = e.getSalary();
-			data[i][7] = e.getPosition();
-		}
-		return data;
+	private static List<String> withVersion(String[] columns) {
+		List<String> list = new ArrayList<>(Arrays.asList(columns));
+		list.add("version");
+		return list;
 	}
 
-	private Object[][] toTableDataForStudents(List<Student> list) {
-		Object[][] data = new Object[list.size()][8];
-		for (int i = 0; i < list.size(); i++) {
-			Student s = list.get(i);
-			data[i][0] = s.getId();
-			data[i][1] = s.getName();
-			data[i][2] = s.getSurname();
-			data[i][3] = s.getAge();
-			data[i][4] = formatDate(s.getDateOfBirth());
-			data[i][5] = formatDate(s.getStartDate());
-			data[i][6] = s.getUniversity();
-			data[i][7] = s.getYear();
+	/**
+	 * Błąd zapisu: przy konflikcie wersji (ktoś inny zmienił rekord) osobny
+	 * komunikat i przeładowanie danych, w pozostałych przypadkach komunikat
+	 * błędu.
+	 */
+	private void showWriteError(String key, Throwable ex) {
+		Throwable cause = ex;
+		while (cause != null && !(cause instanceof OptimisticLockException))
+			cause = cause.getCause();
+		if (cause != null) {
+			JOptionPane.showMessageDialog(this, LocalizationManager.getString("ui.conflict"),
+					LocalizationManager.getString("dialog.error.title"), JOptionPane.WARNING_MESSAGE);
+			loadData();
+			return;
 		}
-		return data;
-	}
-
-	private String formatDate(LocalDate date) {
-		return date == null ? "" : date.toString();
+		JOptionPane.showMessageDialog(this, LocalizationManager.getString(key, ex.getMessage()));
 	}
 
 	// ===== CRUD flows =====
@@ -649,7 +700,7 @@ public class MainGUI extends JFrame {
 				if (entity == null)
 					return CompletableFuture.completedFuture(null);
 				return personService.create(entity);
-			}).thenRun(this::loadData).exceptionally(ex -> {
+			}).thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 				LoggerUtil.error("Create person failed", ex);
 				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
 						LocalizationManager.getString("ui.save.error", ex.getMessage())));
@@ -662,7 +713,7 @@ public class MainGUI extends JFrame {
 				if (entity == null)
 					return CompletableFuture.completedFuture(null);
 				return employeeService.create(entity);
-			}).thenRun(this::loadData).exceptionally(ex -> {
+			}).thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 				LoggerUtil.error("Create employee failed", ex);
 				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
 						LocalizationManager.getString("ui.save.error", ex.getMessage())));
@@ -675,7 +726,7 @@ public class MainGUI extends JFrame {
 				if (entity == null)
 					return CompletableFuture.completedFuture(null);
 				return studentService.create(entity);
-			}).thenRun(this::loadData).exceptionally(ex -> {
+			}).thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 				LoggerUtil.error("Create student failed", ex);
 				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
 						LocalizationManager.getString("ui.save.error", ex.getMessage())));
@@ -708,10 +759,9 @@ public class MainGUI extends JFrame {
 					return CompletableFuture.completedFuture(null);
 				return personService.update(updated);
 			});
-		}).thenRun(this::loadData).exceptionally(ex -> {
+		}).thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 			LoggerUtil.error("Edit person failed", ex);
-			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
-					LocalizationManager.getString("ui.edit.error", ex.getMessage())));
+			SwingUtilities.invokeLater(() -> showWriteError("ui.edit.error", ex));
 			return null;
 		});
 
@@ -728,10 +778,9 @@ public class MainGUI extends JFrame {
 					return CompletableFuture.completedFuture(null);
 				return employeeService.update(updated);
 			});
-		}).thenRun(this::loadData).exceptionally(ex -> {
+		}).thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 			LoggerUtil.error("Edit employee failed", ex);
-			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
-					LocalizationManager.getString("ui.edit.error", ex.getMessage())));
+			SwingUtilities.invokeLater(() -> showWriteError("ui.edit.error", ex));
 			return null;
 		});
 
@@ -748,10 +797,9 @@ public class MainGUI extends JFrame {
 					return CompletableFuture.completedFuture(null);
 				return studentService.update(updated);
 			});
-		}).thenRun(this::loadData).exceptionally(ex -> {
+		}).thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 			LoggerUtil.error("Edit student failed", ex);
-			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
-					LocalizationManager.getString("ui.edit.error", ex.getMessage())));
+			SwingUtilities.invokeLater(() -> showWriteError("ui.edit.error", ex));
 			return null;
 		});
 		}
@@ -769,19 +817,17 @@ public class MainGUI extends JFrame {
 		if (confirm != JOptionPane.YES_OPTION)
 			return;
 
-		CompletableFuture<Void> deletionTask = switch (currentEntity) {
-		case "PERSON" -> personService.deleteById(id).thenAccept(ok -> {
-		});
-		case "EMPLOYEE" -> employeeService.deleteById(id).thenAccept(ok -> {
-		});
-		default -> studentService.deleteById(id).thenAccept(ok -> {
-		});
+		// wersja z ostatniego załadowania strony - usuwamy tylko rekord, który użytkownik widział
+		Integer version = rowVersions.get(id);
+		CompletableFuture<Boolean> deletionTask = switch (currentEntity) {
+		case "PERSON" -> version != null ? personService.deleteById(id, version) : personService.deleteById(id);
+		case "EMPLOYEE" -> version != null ? employeeService.deleteById(id, version) : employeeService.deleteById(id);
+		default -> version != null ? studentService.deleteById(id, version) : studentService.deleteById(id);
 		};
 
-		deletionTask.thenRun(this::loadData).exceptionally(ex -> {
+		deletionTask.thenRun(() -> SwingUtilities.invokeLater(this::loadData)).exceptionally(ex -> {
 			LoggerUtil.error("Delete failed", ex);
-			SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
-					LocalizationManager.getString("ui.delete.error", ex.getMessage())));
+			SwingUtilities.invokeLater(() -> showWriteError("ui.delete.error", ex));
 			return null;
 		});
 	}
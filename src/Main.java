@@ -2,11 +2,27 @@ import GUI.LoginDialog;
 import GUI.MainGUI;
 import jdbc.JdbcConnectionUtil;
 import model.User;
+import repository.EmployeeRepository;
 import repository.EmployeeRepositoryImpl;
+import repository.HiLoIdGenerator;
+import repository.IdGenerator;
+import repository.PersonRepository;
 import repository.PersonRepositoryImpl;
+import repository.RoleRepository;
 import repository.RoleRepositoryImpl;
+import repository.StudentRepository;
 import repository.StudentRepositoryImpl;
+import repository.TransactionTemplate;
+import repository.UserRepository;
 import repository.UserRepositoryImpl;
+import repository.memory.MemoryEmployeeRepository;
+import repository.memory.MemoryPersonRepository;
+import repository.memory.MemoryRoleRepository;
+import repository.memory.MappedStore;
+import repository.memory.MemoryStore;
+import repository.memory.MemoryStudentRepository;
+import repository.memory.MemoryUserRepository;
+import repository.memory.PersonStore;
 import service.EmployeeService;
 import service.EmployeeServiceImpl;
 import service.PersonService;
@@ -20,7 +36,9 @@ import security.AuthManager;
 import utils.LoggerUtil;
 
 import javax.swing.*;
-import java.sql.Connection;
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 
 import java.util.logging.Level;
@@ -31,25 +49,59 @@ import java.util.logging.Level;
  */
 public class Main {
 	public static void main(String[] args) throws Exception {
-		// 1) Inicjalizacja połączenia i podstawowych repo/serwisów (synchron)
-		Connection conn = JdbcConnectionUtil.getConnection();
-
-		// repozytoria aplikacyjne
-		PersonRepositoryImpl personRepo = new PersonRepositoryImpl(conn);
-		EmployeeRepositoryImpl employeeRepo = new EmployeeRepositoryImpl(conn);
-		StudentRepositoryImpl studentRepo = new StudentRepositoryImpl(conn);
-
-		// repozytoria auth
-		UserRepositoryImpl userRepo = new UserRepositoryImpl(conn);
-		RoleRepositoryImpl roleRepo = new RoleRepositoryImpl(conn);
+		// 1) Inicjalizacja repozytoriów i serwisów (synchron)
+		PersonRepository personRepo;
+		EmployeeRepository employeeRepo;
+		StudentRepository studentRepo;
+		UserRepository userRepo;
+		RoleRepository roleRepo;
+		UserService userService;
+		String storage = System.getProperty("app.storage", "mysql");
+		if ("memory".equalsIgnoreCase(storage) || "mapped".equalsIgnoreCase(storage)) {
+			// -Dapp.storage=memory: dane osób tylko w pamięci (tryb offline / pomiary bez bazy)
+			// -Dapp.storage=mapped: kolumny w plikach mapowanych (katalog -Dapp.storage.dir)
+			// Bez bazy: użytkownicy i role też w pamięci - admin jest zakładany przy każdym starcie
+			PersonStore store;
+			if ("mapped".equalsIgnoreCase(storage)) {
+				MappedStore mapped = MappedStore.open(Path.of(System.getProperty("app.storage.dir", "data/persons")));
+				Runtime.getRuntime().addShutdownHook(new Thread(mapped::close, "MappedStore-close"));
+				store = mapped;
+			} else {
+				store = new MemoryStore();
+			}
+			personRepo = new MemoryPersonRepository(store);
+			employeeRepo = new MemoryEmployeeRepository(store);
+			studentRepo = new MemoryStudentRepository(store);
+			MemoryRoleRepository roles = new MemoryRoleRepository();
+			userRepo = new MemoryUserRepository(roles);
+			roleRepo = roles;
+			userService = new UserServiceImpl(userRepo, roleRepo);
+		} else {
+			// pula połączeń (i migracje schematu) tylko w trybie z bazą
+			DataSource dataSource = JdbcConnectionUtil.getDataSource();
+			PersonRepositoryImpl persons = new PersonRepositoryImpl(dataSource);
+			EmployeeRepositoryImpl employees = new EmployeeRepositoryImpl(dataSource);
+			StudentRepositoryImpl students = new StudentRepositoryImpl(dataSource);
+			if ("hilo".equalsIgnoreCase(System.getProperty("app.ids"))) {
+				// -Dapp.ids=hilo: id nadawane blokami z id_sequences, wspólna sekwencja dla tabeli persons
+				IdGenerator ids = new HiLoIdGenerator(dataSource, "persons", "persons", 100);
+				persons.setIdGenerator(ids);
+				employees.setIdGenerator(ids);
+				students.setIdGenerator(ids);
+			}
+			personRepo = persons;
+			employeeRepo = employees;
+			studentRepo = students;
+			userRepo = new UserRepositoryImpl(dataSource);
+			roleRepo = new RoleRepositoryImpl(dataSource);
+			userService = new UserServiceImpl(userRepo, roleRepo, new TransactionTemplate(dataSource));
+		}
 
 		// serwisy
 		PersonService personService = new PersonServiceImpl(personRepo);
 		EmployeeService employeeService = new EmployeeServiceImpl(employeeRepo);
 		StudentService studentService = new StudentServiceImpl(studentRepo);
 
-		UserService userService = new UserServiceImpl(userRepo, roleRepo);
-
 		StatisticsService statisticsService = new StatisticsService(personService, employeeService, studentService);
 
 		// 2) Upewnij się że role istnieją i jest admin
@@ -61,11 +113,9 @@ public class Main {
 			if (maybeAdmin.isEmpty()) {
 				char[] defaultPass = "admin".toCharArray(); // production: nie rób tak
 				// użyj przeciążenia createUser z mustChange = true
-				User created = userService.createUser("admin", defaultPass, true, true).get();
-
-				// przypisz role
-				userService.assignRole("admin", "ROLE_ADMIN").get();
-				userService.assignRole("admin", "ROLE_USER").get();
+				// konto i role w jednej transakcji
+				User created = userService
+						.createUser("admin", defaultPass, true, true, List.of("ROLE_ADMIN", "ROLE_USER")).get();
 
 				LoggerUtil.log(Level.INFO,
 						"Utworzono domyślnego admina 'admin' (hasło: admin) - wymuszono zmianę hasła przy pierwszym logowaniu!");
@@ -0,0 +1,9 @@
+-- rodzaj rekordu (osoba / pracownik / student) w jednej tabeli
+ALTER TABLE persons
+  ADD COLUMN kind ENUM('PERSON', 'EMPLOYEE', 'STUDENT') NOT NULL DEFAULT 'PERSON' AFTER id;
+
+-- tylko wiersze z domyślnym kind, więc ponowne uruchomienie na bazie migrowanej ręcznie nic nie psuje
+UPDATE persons SET kind = CASE
+  WHEN salary IS NOT NULL THEN 'EMPLOYEE'
+  ELSE 'STUDENT' END
+WHERE kind = 'PERSON' AND (salary IS NOT NULL OR university IS NOT NULL);
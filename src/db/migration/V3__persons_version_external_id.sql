@@ -0,0 +1,7 @@
+-- wersja wiersza (optimistic locking)
+ALTER TABLE persons ADD COLUMN version INT NOT NULL DEFAULT 0;
+
+-- klucz zewnętrzny dla upsertAll (NULL nie koliduje w UNIQUE)
+ALTER TABLE persons ADD COLUMN external_id VARCHAR(64) AFTER year;
+
+ALTER TABLE persons ADD UNIQUE KEY uk_persons_kind_external_id (kind, external_id);
@@ -0,0 +1,16 @@
+-- indeksy pod sortowania tabeli GUI, które bez nich kończą się filesortem:
+-- surname, age, salary i start_date (pozostałe kolumny sortują się rzadko,
+-- a każdy indeks to koszt przy każdym zapisie).
+-- Repozytoria pracowników / studentów filtrują po kind, więc (kind, kolumna);
+-- InnoDB dokleja do indeksu klucz główny, co pokrywa ORDER BY kolumna, id.
+-- (kind, id) obsługuje domyślne sortowanie i paginację keyset tych widoków.
+ALTER TABLE persons ADD INDEX idx_persons_kind_id (kind, id);
+ALTER TABLE persons ADD INDEX idx_persons_kind_surname (kind, surname);
+ALTER TABLE persons ADD INDEX idx_persons_kind_age (kind, age);
+ALTER TABLE persons ADD INDEX idx_persons_kind_start_date (kind, start_date);
+ALTER TABLE persons ADD INDEX idx_persons_kind_salary (kind, salary);
+
+-- widok wszystkich osób (bez warunku na kind); salary ma tylko widok pracowników
+ALTER TABLE persons ADD INDEX idx_persons_surname (surname);
+ALTER TABLE persons ADD INDEX idx_persons_age (age);
+ALTER TABLE persons ADD INDEX idx_persons_start_date (start_date);
@@ -0,0 +1,41 @@
+-- H2: teksty VARCHAR_IGNORECASE (porównania i sortowanie jak collation *_ci w MySQL)
+CREATE TABLE IF NOT EXISTS persons (
+  id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name VARCHAR_IGNORECASE(100) NOT NULL,
+  surname VARCHAR_IGNORECASE(100) NOT NULL,
+  age INT,
+  date_of_birth DATE,
+  start_date DATE,
+  salary DOUBLE PRECISION,
+  position VARCHAR_IGNORECASE(100),
+  university VARCHAR_IGNORECASE(200),
+  year INT
+);
+
+CREATE TABLE IF NOT EXISTS roles (
+  id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name VARCHAR_IGNORECASE(50) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS users (
+  id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  username VARCHAR_IGNORECASE(100) NOT NULL UNIQUE,
+  password_hash VARBINARY(255) NOT NULL,
+  salt VARBINARY(64),
+  enabled BOOLEAN DEFAULT TRUE NOT NULL,
+  must_change_password BOOLEAN DEFAULT FALSE NOT NULL,
+  created_at TIMESTAMP(6) DEFAULT CURRENT_TIMESTAMP(6) NOT NULL,
+  updated_at TIMESTAMP(6) DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS user_roles (
+  user_id INT NOT NULL,
+  role_id INT NOT NULL,
+  PRIMARY KEY (user_id, role_id),
+  FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+  FOREIGN KEY (role_id) REFERENCES roles(id) ON DELETE CASCADE
+);
+
+MERGE INTO roles (name) KEY (name) VALUES ('ROLE_ADMIN');
+
+MERGE INTO roles (name) KEY (name) VALUES ('ROLE_USER');
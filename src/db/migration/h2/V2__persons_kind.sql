@@ -0,0 +1,7 @@
+-- rodzaj rekordu (osoba / pracownik / student) w jednej tabeli
+ALTER TABLE persons ADD COLUMN IF NOT EXISTS kind ENUM('PERSON', 'EMPLOYEE', 'STUDENT') DEFAULT 'PERSON' NOT NULL;
+
+UPDATE persons SET kind = CASE
+  WHEN salary IS NOT NULL THEN 'EMPLOYEE'
+  ELSE 'STUDENT' END
+WHERE kind = 'PERSON' AND (salary IS NOT NULL OR university IS NOT NULL);
@@ -0,0 +1,7 @@
+-- wersja wiersza (optimistic locking)
+ALTER TABLE persons ADD COLUMN IF NOT EXISTS version INT DEFAULT 0 NOT NULL;
+
+-- klucz zewnętrzny dla upsertAll (NULL nie koliduje w UNIQUE)
+ALTER TABLE persons ADD COLUMN IF NOT EXISTS external_id VARCHAR_IGNORECASE(64);
+
+ALTER TABLE persons ADD CONSTRAINT IF NOT EXISTS uk_persons_kind_external_id UNIQUE (kind, external_id);
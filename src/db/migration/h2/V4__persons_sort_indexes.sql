@@ -0,0 +1,15 @@
+-- indeksy pod sortowania tabeli GUI, które bez nich kończą się filesortem:
+-- surname, age, salary i start_date (pozostałe kolumny sortują się rzadko,
+-- a każdy indeks to koszt przy każdym zapisie).
+-- Repozytoria pracowników / studentów filtrują po kind, więc (kind, kolumna).
+-- (kind, id) obsługuje domyślne sortowanie i paginację keyset tych widoków.
+CREATE INDEX IF NOT EXISTS idx_persons_kind_id ON persons (kind, id);
+CREATE INDEX IF NOT EXISTS idx_persons_kind_surname ON persons (kind, surname);
+CREATE INDEX IF NOT EXISTS idx_persons_kind_age ON persons (kind, age);
+CREATE INDEX IF NOT EXISTS idx_persons_kind_start_date ON persons (kind, start_date);
+CREATE INDEX IF NOT EXISTS idx_persons_kind_salary ON persons (kind, salary);
+
+-- widok wszystkich osób (bez warunku na kind); salary ma tylko widok pracowników
+CREATE INDEX IF NOT EXISTS idx_persons_surname ON persons (surname);
+CREATE INDEX IF NOT EXISTS idx_persons_age ON persons (age);
+CREATE INDEX IF NOT EXISTS idx_persons_start_date ON persons (start_date);
@@ -0,0 +1,5 @@
+-- sekwencje id nadawanych przez aplikację (HiLoIdGenerator); next_val = ostatnie zarezerwowane id
+CREATE TABLE IF NOT EXISTS id_sequences (
+  name VARCHAR(64) PRIMARY KEY,
+  next_val BIGINT NOT NULL
+);
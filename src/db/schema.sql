@@ -2,6 +2,7 @@ USE enterprise;
 					
 CREATE TABLE IF NOT EXISTS persons (
   id INT AUTO_INCREMENT PRIMARY KEY,
+  kind ENUM('PERSON', 'EMPLOYEE', 'STUDENT') NOT NULL DEFAULT 'PERSON',
   name VARCHAR(100) NOT NULL,
   surname VARCHAR(100) NOT NULL,
   age INT,
@@ -10,9 +11,30 @@ CREATE TABLE IF NOT EXISTS persons (
   salary DOUBLE,
   position VARCHAR(100),
   university VARCHAR(200),
-  year INT
+  year INT,
+  external_id VARCHAR(64),
+  version INT NOT NULL DEFAULT 0,
+  INDEX idx_persons_kind_id (kind, id),
+  INDEX idx_persons_kind_surname (kind, surname),
+  INDEX idx_persons_kind_age (kind, age),
+  INDEX idx_persons_kind_start_date (kind, start_date),
+  INDEX idx_persons_kind_salary (kind, salary),
+  INDEX idx_persons_surname (surname),
+  INDEX idx_persons_age (age),
+  INDEX idx_persons_start_date (start_date),
+  UNIQUE KEY uk_persons_kind_external_id (kind, external_id)
 );
+
+-- Aplikacja przy starcie wykonuje brakujące skrypty db/migration (SchemaMigrator,
+-- historia w schema_migrations) - istniejącej bazy nie trzeba migrować ręcznie.
+-- Ten plik to wynikowy schemat MySQL po wszystkich migracjach (H2: db/migration/h2).
 					
+-- sekwencje id nadawanych przez aplikację (HiLoIdGenerator); next_val = ostatnie zarezerwowane id
+CREATE TABLE IF NOT EXISTS id_sequences (
+  name VARCHAR(64) PRIMARY KEY,
+  next_val BIGINT NOT NULL
+);
+
 CREATE TABLE IF NOT EXISTS roles (
   id INT AUTO_INCREMENT PRIMARY KEY,
   name VARCHAR(50) NOT NULL UNIQUE
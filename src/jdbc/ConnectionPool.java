@@ -0,0 +1,320 @@
+package jdbc;
+
+import utils.LoggerUtil;
+import utils.concurrent.AppExecutors;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Prosta, ograniczona pula połączeń JDBC.
+ *
+ * Każde wywołanie {@link #getConnection()} wypożycza jedno fizyczne połączenie
+ * (lease) - {@code close()} na zwróconym obiekcie oddaje je do puli zamiast
+ * zamykać. Pula pilnuje rozmiaru min/max, waliduje połączenia przy
+ * wypożyczeniu i cyklicznie zamyka połączenia bezczynne ponad limit.
+ */
+public final class ConnectionPool implements DataSource, AutoCloseable {
+
+	/** Połączenie używane krócej niż ten czas temu nie jest ponownie walidowane */
+	private static final long VALIDATION_SKIP_MILLIS = 500;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	private static final long EVICTION_INTERVAL_SECONDS = 30;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int minIdle;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+
+	private final Semaphore permits;
+	private final Deque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger total = new AtomicInteger();
+	private final ScheduledFuture<?> evictionTask;
+	private volatile boolean closed;
+
+	public ConnectionPool(String url, String user, String password, int minIdle, int maxSize, long idleTimeoutMillis,
+			long borrowTimeoutMillis) {
+		if (maxSize <= 0 || minIdle < 0 || minIdle > maxSize)
+			throw new IllegalArgumentException("Invalid pool size: min=" + minIdle + " max=" + maxSize);
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.minIdle = minIdle;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.permits = new Semaphore(maxSize, true);
+
+		fillToMinIdle();
+		this.evictionTask = AppExecutors.SCHEDULED_EXECUTOR.scheduleWithFixedDelay(this::evictIdle,
+				EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Wypożycza połączenie z puli. Blokuje maksymalnie borrowTimeout, gdy
+	 * wszystkie połączenia są w użyciu. Wywołujący musi zamknąć połączenie
+	 * (najlepiej try-with-resources), aby wróciło do puli.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed)
+			throw new SQLException("Connection pool is closed");
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLTimeoutException("Timeout waiting for a pooled connection (max=" + maxSize + ")");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a pooled connection", e);
+		}
+
+		try {
+			PooledEntry entry;
+			while ((entry = idle.pollFirst()) != null) {
+				if (isUsable(entry))
+					return lease(entry);
+				discard(entry);
+			}
+			return lease(createEntry());
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Pool uses fixed credentials");
+	}
+
+	/** Liczba fizycznych połączeń (wypożyczone + bezczynne) */
+	public int getTotalConnections() {
+		return total.get();
+	}
+
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	public int getActiveConnections() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * Zamyka pulę i wszystkie bezczynne połączenia. Połączenia aktualnie
+	 * wypożyczone zostaną zamknięte przy zwrocie.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		evictionTask.cancel(false);
+		PooledEntry entry;
+		while ((entry = idle.pollFirst()) != null)
+			discard(entry);
+	}
+
+	private Connection lease(PooledEntry entry) {
+		return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+				new Class<?>[] { PooledConnection.class }, new LeaseHandler(entry));
+	}
+
+	private PooledEntry createEntry() throws SQLException {
+		Connection physical = DriverManager.getConnection(url, user, password);
+		total.incrementAndGet();
+		return new PooledEntry(physical);
+	}
+
+	private boolean isUsable(PooledEntry entry) {
+		try {
+			if (entry.physical.isClosed())
+				return false;
+			if (System.currentTimeMillis() - entry.lastUsed < VALIDATION_SKIP_MILLIS)
+				return true;
+			return entry.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void release(PooledEntry entry) {
+		try {
+			boolean reusable = !closed && !entry.physical.isClosed();
+			if (reusable && !entry.physical.getAutoCommit()) {
+				// ktoś zostawił otwartą transakcję - nie przenosimy jej na kolejnego klienta
+				entry.physical.rollback();
+				entry.physical.setAutoCommit(true);
+			}
+			if (reusable && entry.physical.isReadOnly())
+				entry.physical.setReadOnly(false);
+			if (reusable) {
+				entry.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(entry);
+			} else {
+				discard(entry);
+			}
+		} catch (SQLException e) {
+			LoggerUtil.error("Discarding broken pooled connection", e);
+			discard(entry);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void discard(PooledEntry entry) {
+		total.decrementAndGet();
+		for (Object attachment : entry.attachments.values()) {
+			if (attachment instanceof AutoCloseable closeable) {
+				try {
+					closeable.close();
+				} catch (Exception ignored) {
+				}
+			}
+		}
+		try {
+			entry.physical.close();
+		} catch (SQLException ignored) {
+		}
+	}
+
+	private void fillToMinIdle() {
+		while (!closed && total.get() < minIdle) {
+			try {
+				idle.offerLast(createEntry());
+			} catch (SQLException e) {
+				LoggerUtil.error("Failed to pre-fill connection pool", e);
+				return;
+			}
+		}
+	}
+
+	private void evictIdle() {
+		try {
+			long now = System.currentTimeMillis();
+			// najstarsze bezczynne połączenia są na końcu kolejki (LIFO przy wypożyczaniu)
+			PooledEntry entry;
+			while (total.get() > minIdle && (entry = idle.peekLast()) != null
+					&& now - entry.lastUsed > idleTimeoutMillis) {
+				if (idle.removeLastOccurrence(entry))
+					discard(entry);
+			}
+			fillToMinIdle();
+		} catch (RuntimeException e) {
+			LoggerUtil.error("Connection pool eviction failed", e);
+		}
+	}
+
+	// ===== DataSource boilerplate =====
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return null;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return 0;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+
+	private static final class PooledEntry {
+		private final Connection physical;
+		// dostęp tylko przez bieżącego dzierżawcę (lub przy discard, gdy nikt go nie trzyma)
+		private final Map<Class<?>, Object> attachments = new HashMap<>();
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		private PooledEntry(Connection physical) {
+			this.physical = physical;
+		}
+	}
+
+	/**
+	 * Handler pojedynczego wypożyczenia. Po close() kolejne wywołania rzucają
+	 * wyjątek, więc przetrzymana referencja nie dotknie połączenia, które
+	 * wypożyczył już ktoś inny.
+	 */
+	private final class LeaseHandler implements InvocationHandler {
+		private final PooledEntry entry;
+		private boolean released;
+
+		private LeaseHandler(PooledEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!released) {
+					released = true;
+					release(entry);
+				}
+				return null;
+			case "isClosed":
+				return released || entry.physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "getAttachment":
+				if (released)
+					throw new SQLException("Connection already returned to pool");
+				return entry.attachments.computeIfAbsent((Class<?>) args[0], k -> ((Supplier<?>) args[1]).get());
+			case "toString":
+				return "PooledConnection[" + entry.physical + (released ? ", released]" : "]");
+			default:
+				if (released)
+					throw new SQLException("Connection already returned to pool");
+				try {
+					return method.invoke(entry.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
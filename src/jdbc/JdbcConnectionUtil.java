@@ -1,78 +1,119 @@
 package jdbc;
 
+import jdbc.dialect.SqlDialect;
+import utils.LoggerUtil;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
 
 /**
- * Klasa narzędziowa do zarządzania połączeniem JDBC z bazą MySQL. Automatycznie
- * inicjalizuje schemat bazy, jeśli nie istnieje.
+ * Klasa narzędziowa do zarządzania połączeniami JDBC z bazą MySQL. Udostępnia
+ * współdzieloną pulę połączeń - repozytoria wypożyczają połączenie na czas
+ * pojedynczej operacji.
+ *
+ * Bazę można zmienić właściwościami -Dapp.db.url, -Dapp.db.user i
+ * -Dapp.db.password, np. -Dapp.db.url=jdbc:h2:./data/enterprise dla bazy H2
+ * wbudowanej w proces (dialekt dobierany po URL, patrz {@link SqlDialect}).
+ *
+ * -Dapp.db.replicas=url1,url2 włącza {@link RoutingDataSource}: odczyty
+ * repozytoriów idą na repliki (-Dapp.db.routing=round-robin|least-loaded),
+ * zapisy na app.db.url. Lokalnie wystarczą dwie instancje bazy, np. MySQL na
+ * portach 3306 (primary) i 3307 (replika).
  */
 public final class JdbcConnectionUtil {
 
-	private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/enterprise?useSSL=true&serverTimezone=UTC&allowPublicKeyRetrieval=true";
+	private static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/enterprise?useSSL=true&serverTimezone=UTC&allowPublicKeyRetrieval=true&useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true";
 	private static final String DEFAULT_USER = "enterprise_user";
 	private static final String DEFAULT_PASSWORD = "enterprise_pass";
 
-	private static Connection connection;
+	// rozmiar puli dopasowany do AppExecutors.DB_EXECUTOR (10 wątków DB-Worker)
+	private static final int POOL_MIN_IDLE = 2;
+	private static final int POOL_MAX_SIZE = 10;
+	private static final long POOL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+	private static final long POOL_BORROW_TIMEOUT_MILLIS = 30 * 1000L;
+
+	/** Odczyty wracają na primary przez tyle ms po zapisie (opóźnienie replikacji) */
+	private static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 2000;
+
+	private static ConnectionPool pool;
+	// pula primary albo routing primary / repliki
+	private static DataSource dataSource;
 
 	private JdbcConnectionUtil() {
 	}
 
 	/**
-	 * Zwraca współdzielone połączenie z bazą danych. Tworzy je tylko raz (singleton
-	 * pattern).
+	 * Zwraca współdzieloną pulę połączeń. Tworzy ją tylko raz (singleton pattern).
 	 */
-	public static synchronized Connection getConnection() throws SQLException {
-		if (connection == null || connection.isClosed()) {
+	public static synchronized DataSource getDataSource() throws SQLException {
+		if (dataSource == null) {
+			String url = System.getProperty("app.db.url", DEFAULT_URL);
+			SqlDialect dialect = SqlDialect.forUrl(url);
 			try {
 				// W nowszych wersjach JDBC nie jest to wymagane, ale dla pewności:
-				Class.forName("com.mysql.cj.jdbc.Driver");
+				Class.forName(dialect.driverClassName());
 			} catch (ClassNotFoundException e) {
-				throw new SQLException("Brak sterownika MySQL JDBC!", e);
+				throw new SQLException("Brak sterownika " + dialect.name() + " JDBC!", e);
 			}
 
-			connection = DriverManager.getConnection(DEFAULT_URL, DEFAULT_USER, DEFAULT_PASSWORD);
-		//	initializeSchema(connection);
+			pool = newPool(dialect.configureUrl(url), POOL_MIN_IDLE);
+			// brakujące migracje db/migration (wersje zapisane w schema_migrations)
+			try {
+				SchemaMigrator.migrate(pool);
+			} catch (SQLException e) {
+				pool.close();
+				pool = null;
+				throw e;
+			}
+			dataSource = withReplicas(pool, dialect);
 		}
-		return connection;
+		return dataSource;
+	}
+
+	private static ConnectionPool newPool(String url, int minIdle) {
+		return new ConnectionPool(url, System.getProperty("app.db.user", DEFAULT_USER),
+				System.getProperty("app.db.password", DEFAULT_PASSWORD), minIdle, POOL_MAX_SIZE,
+				POOL_IDLE_TIMEOUT_MILLIS, POOL_BORROW_TIMEOUT_MILLIS);
+	}
+
+	// repliki mają ten sam schemat (migracje idą tylko na primary) i te same dane logowania
+	private static DataSource withReplicas(ConnectionPool primary, SqlDialect dialect) {
+		String urls = System.getProperty("app.db.replicas", "").trim();
+		if (urls.isEmpty())
+			return primary;
+		List<ConnectionPool> replicas = new ArrayList<>();
+		for (String url : urls.split(","))
+			if (!url.isBlank())
+				replicas.add(newPool(dialect.configureUrl(url.trim()), 1));
+		RoutingDataSource.Strategy strategy = "least-loaded".equalsIgnoreCase(System.getProperty("app.db.routing"))
+				? RoutingDataSource.Strategy.LEAST_LOADED
+				: RoutingDataSource.Strategy.ROUND_ROBIN;
+		LoggerUtil.info("Odczyty z " + replicas.size() + " replik (" + strategy + ")");
+		return new RoutingDataSource(primary, replicas, strategy,
+				Long.getLong("app.db.readYourWritesMillis", DEFAULT_READ_YOUR_WRITES_MILLIS));
 	}
 
 	/**
-	 * Inicjalizuje strukturę tabeli `persons`, jeśli nie istnieje.
+	 * Wypożycza połączenie z puli. Wywołujący musi je zamknąć (oddaje je wtedy do
+	 * puli).
 	 */
-	private static void initializeSchema(Connection conn) {
-		try (Statement st = conn.createStatement()) {
-			String create = """
-					CREATE TABLE IF NOT EXISTS persons (
-					    id INT AUTO_INCREMENT PRIMARY KEY,
-					    name VARCHAR(100) NOT NULL,
-					    surname VARCHAR(100) NOT NULL,
-					    age INT,
-					    date_of_birth DATE,
-					    start_date DATE,
-					    salary DOUBLE,
-					    position VARCHAR(100),
-					    university VARCHAR(200),
-					    year INT
-					)
-					""";
-			st.execute(create);
-		} catch (SQLException e) {
-			throw new RuntimeException("Failed to initialize DB schema", e);
-		}
+	public static Connection getConnection() throws SQLException {
+		return getDataSource().getConnection();
 	}
 
 	/**
-	 * Zamyka połączenie z bazą danych, jeśli jest otwarte.
+	 * Zamyka pulę połączeń, jeśli jest otwarta.
 	 */
 	public static synchronized void closeConnection() {
-		if (connection != null) {
-			try {
-				connection.close();
-			} catch (SQLException ignored) {
-			}
-		}
+		if (dataSource instanceof RoutingDataSource routing)
+			routing.close(); // zamyka też pulę primary
+		else if (pool != null)
+			pool.close();
+		pool = null;
+		dataSource = null;
 	}
 }
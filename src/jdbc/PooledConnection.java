@@ -0,0 +1,19 @@
+package jdbc;
+
+import java.sql.Connection;
+import java.util.function.Supplier;
+
+/**
+ * Połączenie wypożyczone z {@link ConnectionPool}. Pozwala przypiąć do
+ * fizycznego połączenia obiekty żyjące dłużej niż pojedyncze wypożyczenie (np.
+ * cache prepared statementów).
+ */
+public interface PooledConnection extends Connection {
+
+	/**
+	 * Zwraca obiekt danego typu przypięty do fizycznego połączenia, tworząc go
+	 * przy pierwszym użyciu. Jeśli obiekt jest AutoCloseable, zostanie zamknięty
+	 * razem z fizycznym połączeniem.
+	 */
+	<A> A getAttachment(Class<A> type, Supplier<A> factory);
+}
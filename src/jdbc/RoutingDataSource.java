@@ -0,0 +1,277 @@
+package jdbc;
+
+import utils.LoggerUtil;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * DataSource rozdzielający odczyty i zapisy: {@link #getConnection()} i
+ * {@link #getWriteConnection()} zwracają połączenie z bazy głównej (primary),
+ * a {@link #getReadConnection()} - z jednej z replik, wybranej po kolei albo
+ * najmniej obciążonej.
+ *
+ * Read-your-writes: dopóki trwa zapis na primary (połączenie z
+ * getWriteConnection) i przez readYourWritesMillis po jego końcu odczyty też
+ * idą na primary, żeby opóźniona replikacja nie ukryła właśnie zapisanych
+ * danych. Inna praca na primary (odczyty kont, metadane, sekwencje id) okna
+ * nie otwiera. Aplikacja ma jednego użytkownika, więc sesją jest cała
+ * aplikacja.
+ *
+ * Replika, z którą nie da się połączyć, jest pomijana przez
+ * REPLICA_RETRY_MILLIS, a odczyt idzie wtedy na primary. Replika tylko zajęta
+ * (timeout wypożyczenia z jej puli) oddaje ten jeden odczyt primary, ale
+ * zostaje w obiegu.
+ */
+public final class RoutingDataSource implements DataSource, AutoCloseable {
+
+	/** Wybór repliki dla odczytu */
+	public enum Strategy {
+		ROUND_ROBIN, LEAST_LOADED
+	}
+
+	private static final long REPLICA_RETRY_MILLIS = 30 * 1000L;
+
+	private final DataSource primary;
+	private final Replica[] replicas;
+	private final Strategy strategy;
+	private final long readYourWritesNanos;
+
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	private final AtomicInteger writesInProgress = new AtomicInteger();
+	private volatile long lastWriteEnd;
+
+	private static final class Replica {
+		private final DataSource dataSource;
+		private final AtomicInteger inUse = new AtomicInteger();
+		private volatile long downUntil;
+
+		private Replica(DataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+	}
+
+	public RoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Strategy strategy,
+			long readYourWritesMillis) {
+		this.primary = primary;
+		this.replicas = new Replica[replicas.size()];
+		for (int i = 0; i < this.replicas.length; i++)
+			this.replicas[i] = new Replica(replicas.get(i));
+		this.strategy = strategy;
+		this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+		this.lastWriteEnd = System.nanoTime() - readYourWritesNanos - 1;
+	}
+
+	/**
+	 * Połączenie z primary, które nie wpływa na routing odczytów - dla
+	 * odczytów wymagających świeżych danych i pracy pomocniczej.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		return primary.getConnection();
+	}
+
+	/**
+	 * Połączenie z primary do zapisu (także transakcji): do jego zamknięcia i
+	 * przez readYourWritesMillis później odczyty idą na primary.
+	 */
+	public Connection getWriteConnection() throws SQLException {
+		writesInProgress.incrementAndGet();
+		try {
+			return track(primary.getConnection(), this::writeEnded);
+		} catch (SQLException | RuntimeException e) {
+			writeEnded();
+			throw e;
+		}
+	}
+
+	/**
+	 * Połączenie do samego odczytu: z repliki, chyba że trwa lub niedawno
+	 * skończył się zapis (read-your-writes) albo żadna replika nie jest
+	 * dostępna.
+	 */
+	public Connection getReadConnection() throws SQLException {
+		if (writesInProgress.get() > 0 || System.nanoTime() - lastWriteEnd < readYourWritesNanos)
+			return primary.getConnection();
+		Replica replica = choose();
+		if (replica == null)
+			return primary.getConnection();
+		replica.inUse.incrementAndGet();
+		try {
+			return track(replica.dataSource.getConnection(), replica.inUse::decrementAndGet);
+		} catch (SQLException e) {
+			replica.inUse.decrementAndGet();
+			if (isConnectionFailure(e)) {
+				replica.downUntil = System.currentTimeMillis() + REPLICA_RETRY_MILLIS;
+				LoggerUtil.warn("Replika niedostępna, odczyt z primary: " + e.getMessage());
+			} else {
+				LoggerUtil.info("Replika zajęta, odczyt z primary: " + e.getMessage());
+			}
+			return primary.getConnection();
+		}
+	}
+
+	// SQLState klasy 08 - brak połączenia z serwerem; timeout puli (SQLTimeoutException) to tylko zajęta replika
+	private static boolean isConnectionFailure(SQLException e) {
+		if (e instanceof SQLTimeoutException)
+			return false;
+		if (e instanceof SQLNonTransientConnectionException || e instanceof SQLRecoverableException)
+			return true;
+		String state = e.getSQLState();
+		return state != null && state.startsWith("08");
+	}
+
+	// kolejność zapisu: czas końca przed zmniejszeniem licznika, żeby odczyt nie zobaczył 0 i starego czasu
+	private void writeEnded() {
+		lastWriteEnd = System.nanoTime();
+		writesInProgress.decrementAndGet();
+	}
+
+	private Replica choose() {
+		int n = replicas.length;
+		if (n == 0)
+			return null;
+		long now = System.currentTimeMillis();
+		int start = Math.floorMod(nextReplica.getAndIncrement(), n);
+		Replica best = null;
+		for (int i = 0; i < n; i++) {
+			Replica candidate = replicas[(start + i) % n];
+			if (candidate.downUntil > now)
+				continue;
+			if (strategy == Strategy.ROUND_ROBIN)
+				return candidate;
+			if (best == null || candidate.inUse.get() < best.inUse.get())
+				best = candidate;
+		}
+		return best;
+	}
+
+	/** Liczba trwających zapisów (połączeń z getWriteConnection) */
+	public int getWritesInProgress() {
+		return writesInProgress.get();
+	}
+
+	/**
+	 * Zamyka primary i repliki, jeśli można je zamknąć (np.
+	 * {@link ConnectionPool}).
+	 */
+	@Override
+	public void close() {
+		closeQuietly(primary);
+		for (Replica replica : replicas)
+			closeQuietly(replica.dataSource);
+	}
+
+	private static void closeQuietly(DataSource dataSource) {
+		if (dataSource instanceof AutoCloseable closeable) {
+			try {
+				closeable.close();
+			} catch (Exception e) {
+				LoggerUtil.warn("Nie udało się zamknąć DataSource: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Połączenie, które przy pierwszym close() wywołuje onRelease. Interfejs
+	 * PooledConnection zostaje zachowany (cache statementów działa dalej).
+	 */
+	private static Connection track(Connection connection, Runnable onRelease) {
+		Class<?> type = connection instanceof PooledConnection ? PooledConnection.class : Connection.class;
+		return (Connection) Proxy.newProxyInstance(RoutingDataSource.class.getClassLoader(), new Class<?>[] { type },
+				new TrackingHandler(connection, onRelease));
+	}
+
+	private static final class TrackingHandler implements InvocationHandler {
+		private final Connection delegate;
+		private final Runnable onRelease;
+		private boolean released;
+
+		private TrackingHandler(Connection delegate, Runnable onRelease) {
+			this.delegate = delegate;
+			this.onRelease = onRelease;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				try {
+					delegate.close();
+				} finally {
+					if (!released) {
+						released = true;
+						onRelease.run();
+					}
+				}
+				return null;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				try {
+					return method.invoke(delegate, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+
+	// ===== DataSource boilerplate =====
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Routing uses the credentials of its data sources");
+	}
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return null;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return 0;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this))
+			return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+}
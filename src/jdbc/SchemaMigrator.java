@@ -0,0 +1,202 @@
+package jdbc;
+
+import jdbc.dialect.SqlDialect;
+import utils.LoggerUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * Wersjonowane migracje schematu. Skrypty db/migration/V&lt;n&gt;__&lt;opis&gt;.sql
+ * (z classpath; dla innych baz katalog dialektu, np. db/migration/h2/, z tymi
+ * samymi wersjami) są wykonywane po kolei, a każdy wykonany zapisuje się w
+ * tabeli schema_migrations razem z sumą SHA-256 treści.
+ *
+ * Uruchomienie jest idempotentne: zastosowane wersje są pomijane, a zmiana
+ * treści już zastosowanego skryptu przerywa start (nowa zmiana = nowy plik).
+ * Równoległe starty serializuje blokada nazwana dialektu. Skrypty
+ * zakładają, że baza mogła być wcześniej migrowana ręcznie według
+ * schema.sql - istniejąca tabela, kolumna lub indeks oznacza zmianę już
+ * wykonaną.
+ */
+public final class SchemaMigrator {
+
+	/** Skrypty w kolejności wersji - nowy skrypt dopisujemy na końcu */
+	private static final List<String> SCRIPTS = List.of(
+			"V1__base_tables.sql",
+			"V2__persons_kind.sql",
+			"V3__persons_version_external_id.sql",
+			"V4__persons_sort_indexes.sql",
+			"V5__id_sequences.sql");
+
+	private static final String LOCK_NAME = "schema_migrations";
+	private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+	private SchemaMigrator() {
+	}
+
+	/**
+	 * Wykonuje brakujące migracje.
+	 *
+	 * @return liczba wykonanych skryptów
+	 */
+	public static int migrate(DataSource dataSource) throws SQLException {
+		try (Connection conn = dataSource.getConnection()) {
+			conn.setAutoCommit(true);
+			SqlDialect dialect = SqlDialect.of(conn);
+			if (!dialect.acquireLock(conn, LOCK_NAME, LOCK_TIMEOUT_SECONDS))
+				throw new SQLException("Timed out waiting for lock '" + LOCK_NAME + "'");
+			try {
+				createHistoryTable(conn);
+				Map<Integer, String> applied = appliedChecksums(conn);
+				int executed = 0;
+				for (String script : SCRIPTS) {
+					int version = version(script);
+					String sql = load(dialect.migrationLocation() + script);
+					String checksum = checksum(sql);
+					String recorded = applied.get(version);
+					if (recorded != null) {
+						if (!recorded.equals(checksum))
+							throw new SQLException("Migration " + script + " was changed after being applied (checksum "
+									+ recorded + " != " + checksum + ")");
+						continue;
+					}
+					long start = System.nanoTime();
+					for (String statement : statements(sql))
+						execute(conn, dialect, script, statement);
+					long millis = (System.nanoTime() - start) / 1_000_000;
+					record(conn, version, description(script), checksum, millis);
+					LoggerUtil.info("Zastosowano migrację " + script + " (" + millis + " ms)");
+					executed++;
+				}
+				return executed;
+			} finally {
+				unlock(conn, dialect);
+			}
+		}
+	}
+
+	private static void unlock(Connection conn, SqlDialect dialect) {
+		try {
+			dialect.releaseLock(conn, LOCK_NAME);
+		} catch (SQLException e) {
+			// blokada i tak zniknie po zamknięciu sesji
+			LoggerUtil.warn("Nie udało się zwolnić blokady migracji: " + e.getMessage());
+		}
+	}
+
+	private static void createHistoryTable(Connection conn) throws SQLException {
+		try (Statement st = conn.createStatement()) {
+			st.execute("""
+					CREATE TABLE IF NOT EXISTS schema_migrations (
+					    version INT PRIMARY KEY,
+					    description VARCHAR(200) NOT NULL,
+					    checksum CHAR(64) NOT NULL,
+					    execution_ms BIGINT NOT NULL,
+					    applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+					)
+					""");
+		}
+	}
+
+	private static Map<Integer, String> appliedChecksums(Connection conn) throws SQLException {
+		Map<Integer, String> applied = new HashMap<>();
+		try (Statement st = conn.createStatement();
+				ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_migrations")) {
+			while (rs.next())
+				applied.put(rs.getInt(1), rs.getString(2));
+		}
+		return applied;
+	}
+
+	private static void execute(Connection conn, SqlDialect dialect, String script, String statement)
+			throws SQLException {
+		try (Statement st = conn.createStatement()) {
+			st.execute(statement);
+		} catch (SQLException e) {
+			if (!dialect.isAlreadyExists(e))
+				throw new SQLException("Migration " + script + " failed at: " + statement, e.getSQLState(),
+						e.getErrorCode(), e);
+			LoggerUtil.info("Migracja " + script + ": zmiana już istnieje (" + e.getMessage() + ")");
+		}
+	}
+
+	private static void record(Connection conn, int version, String description, String checksum, long millis)
+			throws SQLException {
+		try (PreparedStatement ps = conn.prepareStatement(
+				"INSERT INTO schema_migrations (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+			ps.setInt(1, version);
+			ps.setString(2, description);
+			ps.setString(3, checksum);
+			ps.setLong(4, millis);
+			ps.executeUpdate();
+		}
+	}
+
+	/**
+	 * Dzieli skrypt na instrukcje: linia kończąca się średnikiem zamyka
+	 * instrukcję, linie komentarza (--) są pomijane.
+	 */
+	static List<String> statements(String sql) {
+		List<String> result = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		for (String line : sql.split("\\R")) {
+			String trimmed = line.strip();
+			if (trimmed.isEmpty() || trimmed.startsWith("--"))
+				continue;
+			current.append(line).append('\n');
+			if (trimmed.endsWith(";")) {
+				String statement = current.toString().strip();
+				result.add(statement.substring(0, statement.length() - 1));
+				current.setLength(0);
+			}
+		}
+		if (!current.toString().isBlank())
+			result.add(current.toString().strip());
+		return result;
+	}
+
+	private static String load(String path) throws SQLException {
+		try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(path)) {
+			if (in == null)
+				throw new SQLException("Migration script not found on classpath: " + path);
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new SQLException("Cannot read migration script " + path, e);
+		}
+	}
+
+	// suma bez znaczenia końców linii (checkout na Windows nie zmienia wersji)
+	private static String checksum(String sql) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of()
+					.formatHex(digest.digest(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static int version(String script) {
+		return Integer.parseInt(script.substring(1, script.indexOf("__")));
+	}
+
+	private static String description(String script) {
+		return script.substring(script.indexOf("__") + 2, script.lastIndexOf('.')).replace('_', ' ');
+	}
+}
@@ -0,0 +1,92 @@
+package jdbc.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * H2 wbudowane w proces aplikacji (np. jdbc:h2:./data/enterprise) - baza dla
+ * instalacji jednostanowiskowych i testów wydajności bez sieci.
+ *
+ * INSERT IGNORE i upsert to MERGE INTO ... USING (źródło INSERT) z warunkiem
+ * na kolumnach klucza. Teksty w skryptach migracji są VARCHAR_IGNORECASE,
+ * żeby porównania, LIKE i sortowanie nie rozróżniały wielkości liter jak w
+ * MySQL.
+ */
+final class H2Dialect implements SqlDialect {
+
+	// TABLE_OR_VIEW_ALREADY_EXISTS_1, DUPLICATE_COLUMN_NAME_1, INDEX_ALREADY_EXISTS_1, CONSTRAINT_ALREADY_EXISTS_1
+	private static final Set<Integer> ALREADY_EXISTS = Set.of(42101, 42121, 42111, 90045);
+
+	@Override
+	public String name() {
+		return "H2";
+	}
+
+	@Override
+	public String driverClassName() {
+		return "org.h2.Driver";
+	}
+
+	// kolumna persons.year - YEAR jest słowem kluczowym w H2 2.x
+	@Override
+	public String configureUrl(String url) {
+		return url.toUpperCase().contains(";NON_KEYWORDS=") ? url : url + ";NON_KEYWORDS=YEAR";
+	}
+
+	@Override
+	public String migrationLocation() {
+		return "db/migration/h2/";
+	}
+
+	@Override
+	public String insertIgnore(String insertSql, List<String> keyColumns) {
+		return merge(InsertStatement.parse(insertSql), keyColumns).toString();
+	}
+
+	@Override
+	public String upsert(String insertSql, List<String> keyColumns, List<String> updateColumns,
+			String versionColumn) {
+		InsertStatement insert = InsertStatement.parse(insertSql);
+		StringBuilder sql = merge(insert, keyColumns).append(" WHEN MATCHED THEN UPDATE SET ");
+		for (String column : updateColumns)
+			sql.append(column).append(" = s.").append(column).append(", ");
+		if (versionColumn != null)
+			sql.append(versionColumn).append(" = t.").append(versionColumn).append(" + 1");
+		else
+			sql.setLength(sql.length() - 2);
+		return sql.toString();
+	}
+
+	// MERGE INTO t USING (źródło) s (kolumny) ON klucz WHEN NOT MATCHED THEN INSERT
+	private static StringBuilder merge(InsertStatement insert, List<String> keyColumns) {
+		String columns = String.join(", ", insert.columns());
+		StringBuilder sql = new StringBuilder("MERGE INTO ").append(insert.table()).append(" t USING (")
+				.append(insert.source()).append(") s (").append(columns).append(") ON ");
+		for (int i = 0; i < keyColumns.size(); i++) {
+			if (i > 0)
+				sql.append(" AND ");
+			sql.append("t.").append(keyColumns.get(i)).append(" = s.").append(keyColumns.get(i));
+		}
+		sql.append(" WHEN NOT MATCHED THEN INSERT (").append(columns).append(") VALUES (");
+		for (int i = 0; i < insert.columns().size(); i++)
+			sql.append(i > 0 ? ", s." : "s.").append(insert.columns().get(i));
+		return sql.append(')');
+	}
+
+	// baza wbudowana ma jeden proces-właściciel (plik bazy jest zablokowany) - nie ma z kim się ścigać
+	@Override
+	public boolean acquireLock(Connection connection, String name, int timeoutSeconds) {
+		return true;
+	}
+
+	@Override
+	public void releaseLock(Connection connection, String name) {
+	}
+
+	@Override
+	public boolean isAlreadyExists(SQLException e) {
+		return ALREADY_EXISTS.contains(e.getErrorCode());
+	}
+}
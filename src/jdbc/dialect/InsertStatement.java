@@ -0,0 +1,27 @@
+package jdbc.dialect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Części zapytania "INSERT INTO t (a, b) VALUES (...)" / "INSERT INTO t (a, b)
+ * SELECT ..." potrzebne do przepisania go na składnię dialektu.
+ *
+ * @param source VALUES (...) albo SELECT ... - bez zmian
+ */
+record InsertStatement(String table, List<String> columns, String source) {
+
+	private static final String PREFIX = "INSERT INTO ";
+
+	static InsertStatement parse(String sql) {
+		int open = sql.indexOf('(');
+		int close = sql.indexOf(')', open);
+		if (!sql.startsWith(PREFIX) || open < 0 || close < 0)
+			throw new IllegalArgumentException("Unsupported INSERT shape: " + sql);
+		List<String> columns = new ArrayList<>();
+		for (String column : sql.substring(open + 1, close).split(","))
+			columns.add(column.trim());
+		return new InsertStatement(sql.substring(PREFIX.length(), open).trim(), List.copyOf(columns),
+				sql.substring(close + 1).trim());
+	}
+}
@@ -0,0 +1,82 @@
+package jdbc.dialect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * MySQL / MariaDB: INSERT IGNORE, ON DUPLICATE KEY UPDATE i GET_LOCK.
+ */
+final class MySqlDialect implements SqlDialect {
+
+	// ER_TABLE_EXISTS_ERROR, ER_DUP_FIELDNAME, ER_DUP_KEYNAME
+	private static final Set<Integer> ALREADY_EXISTS = Set.of(1050, 1060, 1061);
+
+	@Override
+	public String name() {
+		return "MySQL";
+	}
+
+	@Override
+	public String driverClassName() {
+		return "com.mysql.cj.jdbc.Driver";
+	}
+
+	@Override
+	public String migrationLocation() {
+		return "db/migration/";
+	}
+
+	// klucz nie jest potrzebny - IGNORE / ON DUPLICATE KEY działa na każdym kluczu unikalnym
+	@Override
+	public String insertIgnore(String insertSql, List<String> keyColumns) {
+		InsertStatement insert = InsertStatement.parse(insertSql);
+		return "INSERT IGNORE INTO " + insert.table() + " (" + String.join(", ", insert.columns()) + ") "
+				+ insert.source();
+	}
+
+	@Override
+	public String upsert(String insertSql, List<String> keyColumns, List<String> updateColumns,
+			String versionColumn) {
+		StringBuilder sql = new StringBuilder(insertSql).append(" ON DUPLICATE KEY UPDATE ");
+		for (String column : updateColumns)
+			sql.append(column).append(" = VALUES(").append(column).append("), ");
+		if (versionColumn != null)
+			sql.append(versionColumn).append(" = ").append(versionColumn).append(" + 1");
+		else
+			sql.setLength(sql.length() - 2);
+		return sql.toString();
+	}
+
+	@Override
+	public boolean supportsLastInsertId() {
+		return true;
+	}
+
+	@Override
+	public boolean acquireLock(Connection connection, String name, int timeoutSeconds) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+			ps.setString(1, name);
+			ps.setInt(2, timeoutSeconds);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() && rs.getInt(1) == 1;
+			}
+		}
+	}
+
+	@Override
+	public void releaseLock(Connection connection, String name) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+			ps.setString(1, name);
+			ps.executeQuery().close();
+		}
+	}
+
+	@Override
+	public boolean isAlreadyExists(SQLException e) {
+		return ALREADY_EXISTS.contains(e.getErrorCode());
+	}
+}
@@ -0,0 +1,86 @@
+package jdbc.dialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+
+/**
+ * Różnice składni i zachowania między obsługiwanymi bazami. Repozytoria
+ * piszą SQL wspólny dla wszystkich baz, a konstrukcje specyficzne (INSERT z
+ * pominięciem duplikatów, upsert, blokady) budują przez dialekt.
+ *
+ * Zapytania przyjmowane przez dialekt mają postać
+ * "INSERT INTO t (a, b) VALUES (...)" albo "INSERT INTO t (a, b) SELECT ...".
+ */
+public interface SqlDialect {
+
+	SqlDialect MYSQL = new MySqlDialect();
+	SqlDialect H2 = new H2Dialect();
+
+	String name();
+
+	/** Klasa sterownika JDBC ładowana przed utworzeniem puli */
+	String driverClassName();
+
+	/** URL uzupełniony o ustawienia wymagane przez dialekt */
+	default String configureUrl(String url) {
+		return url;
+	}
+
+	/** Katalog skryptów migracji na classpath (z końcowym '/') */
+	String migrationLocation();
+
+	/**
+	 * INSERT pomijający wiersze, które naruszyłyby klucz unikalny keyColumns
+	 * (bez błędu i bez zmiany istniejącego wiersza).
+	 */
+	String insertIgnore(String insertSql, List<String> keyColumns);
+
+	/**
+	 * INSERT, który przy konflikcie klucza keyColumns nadpisuje kolumny
+	 * updateColumns wartościami wstawianego wiersza i zwiększa versionColumn o
+	 * 1 (versionColumn może być null). Parametry jak w insertSql.
+	 */
+	String upsert(String insertSql, List<String> keyColumns, List<String> updateColumns, String versionColumn);
+
+	/**
+	 * Czy UPDATE ... SET c = LAST_INSERT_ID(expr) zapamiętuje wartość do
+	 * odczytu przez SELECT LAST_INSERT_ID() w tej samej sesji.
+	 */
+	default boolean supportsLastInsertId() {
+		return false;
+	}
+
+	/**
+	 * Blokada nazwana na poziomie sesji (serializuje np. migracje kilku
+	 * instancji aplikacji).
+	 *
+	 * @return false jeśli nie udało się jej uzyskać w czasie timeoutSeconds
+	 */
+	boolean acquireLock(Connection connection, String name, int timeoutSeconds) throws SQLException;
+
+	void releaseLock(Connection connection, String name) throws SQLException;
+
+	/** Błąd DDL oznaczający, że tworzony obiekt (tabela, kolumna, indeks) już istnieje */
+	boolean isAlreadyExists(SQLException e);
+
+	/** Dialekt dla URL JDBC */
+	static SqlDialect forUrl(String url) throws SQLException {
+		if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:"))
+			return MYSQL;
+		if (url.startsWith("jdbc:h2:"))
+			return H2;
+		throw new SQLFeatureNotSupportedException("Unsupported database URL: " + url);
+	}
+
+	/** Dialekt bazy, z którą połączone jest połączenie */
+	static SqlDialect of(Connection connection) throws SQLException {
+		String product = connection.getMetaData().getDatabaseProductName();
+		if ("MySQL".equalsIgnoreCase(product) || "MariaDB".equalsIgnoreCase(product))
+			return MYSQL;
+		if ("H2".equalsIgnoreCase(product))
+			return H2;
+		throw new SQLFeatureNotSupportedException("Unsupported database: " + product);
+	}
+}
@@ -25,7 +25,7 @@ public class Employee extends Person {
 	}
 
 	public void setSalary(Double salary) {
-		this.salary = salary == null ? 0.0 : salary;
+		this.salary = track(this.salary, salary == null ? 0.0 : salary, "salary");
 	}
 
 	public String getPosition() {
@@ -33,7 +33,7 @@ public class Employee extends Person {
 	}
 
 	public void setPosition(String position) {
-		this.position = position == null ? "" : position.trim();
+		this.position = track(this.position, position == null ? "" : position.trim(), "position");
 	}
 
 	@Override
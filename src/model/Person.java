@@ -1,7 +1,10 @@
 package model;
 
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Abstrakcyjna encja Person. Zawiera pola wspólne dla wszystkich osób
@@ -14,11 +17,19 @@ public abstract class Person {
     private Integer age;
     private LocalDate dateOfBirth;
     private LocalDate startDate;
+    // klucz z systemu zewnętrznego (np. feed HR) - naturalny klucz dla upsertAll
+    private String externalId;
+    // wersja wiersza w bazie (optimistic locking) - nie jest śledzona jako zmiana
+    private int version;
 
     //Pola systemowe (do logowania zmian)
     private LocalDate createdAt;
     private LocalDate updatedAt;
 
+    // zmienione właściwości od ostatniego odczytu/zapisu; śledzenie włącza repozytorium (markClean)
+    private final Set<String> dirtyFields = new LinkedHashSet<>();
+    private boolean tracked;
+
     protected Person() {
     }
 
@@ -47,7 +58,7 @@ public abstract class Person {
     }
 
     public void setName(String name) {
-        this.name = name == null ? "" : name.trim();
+        this.name = track(this.name, name == null ? "" : name.trim(), "name");
     }
 
     public String getSurname() {
@@ -55,7 +66,7 @@ public abstract class Person {
     }
 
     public void setSurname(String surname) {
-        this.surname = surname == null ? "" : surname.trim();
+        this.surname = track(this.surname, surname == null ? "" : surname.trim(), "surname");
     }
 
     public Integer getAge() {
@@ -63,7 +74,7 @@ public abstract class Person {
     }
 
     public void setAge(Integer age) {
-        this.age = age;
+        this.age = track(this.age, age, "age");
     }
 
     public LocalDate getDateOfBirth() {
@@ -71,7 +82,7 @@ public abstract class Person {
     }
 
     public void setDateOfBirth(LocalDate dateOfBirth) {
-        this.dateOfBirth = dateOfBirth;
+        this.dateOfBirth = track(this.dateOfBirth, dateOfBirth, "dateOfBirth");
     }
 
     public LocalDate getStartDate() {
@@ -79,7 +90,23 @@ public abstract class Person {
     }
 
     public void setStartDate(LocalDate startDate) {
-        this.startDate = startDate;
+        this.startDate = track(this.startDate, startDate, "startDate");
+    }
+
+    public String getExternalId() {
+        return externalId;
+    }
+
+    public void setExternalId(String externalId) {
+        this.externalId = track(this.externalId, externalId, "externalId");
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
 
     // Gettery/settery dla pól systemowych
@@ -99,6 +126,38 @@ public abstract class Person {
         this.updatedAt = updatedAt;
     }
 
+    // Śledzenie zmian (częściowy UPDATE)
+
+    /**
+     * Zwraca nową wartość pola, a jeśli różni się od bieżącej - zapamiętuje
+     * właściwość jako zmienioną.
+     */
+    protected final <V> V track(V current, V next, String field) {
+        if (!Objects.equals(current, next))
+            dirtyFields.add(field);
+        return next;
+    }
+
+    /** Czy encja jest zsynchronizowana z bazą i ma śledzone zmiany */
+    public boolean isTracked() {
+        return tracked;
+    }
+
+    public boolean isDirty() {
+        return !dirtyFields.isEmpty();
+    }
+
+    /** Właściwości zmienione od ostatniego markClean() */
+    public Set<String> getDirtyFields() {
+        return Collections.unmodifiableSet(dirtyFields);
+    }
+
+    /** Stan encji odpowiada bazie - wywoływane przez repozytorium po odczycie/zapisie */
+    public void markClean() {
+        dirtyFields.clear();
+        tracked = true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -123,6 +182,8 @@ public abstract class Person {
                 ", age=" + age +
                 ", dateOfBirth=" + dateOfBirth +
                 ", startDate=" + startDate +
+                ", externalId=" + externalId +
+                ", version=" + version +
                 ", createdAt=" + createdAt +
                 ", updatedAt=" + updatedAt +
                 '}';
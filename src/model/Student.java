@@ -25,7 +25,7 @@ public class Student extends Person {
 	}
 
 	public void setUniversity(String university) {
-		this.university = university == null ? "" : university.trim();
+		this.university = track(this.university, university == null ? "" : university.trim(), "university");
 	}
 
 	public Integer getYear() {
@@ -33,7 +33,7 @@ public class Student extends Person {
 	}
 
 	public void setYear(Integer year) {
-		this.year = year == null ? 1 : year;
+		this.year = track(this.year, year == null ? 1 : year, "year");
 	}
 
 	@Override
@@ -1,7 +1,12 @@
 package repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Generyczny interfejs CRUD + prosta paginacja i sortowanie.
@@ -10,9 +15,67 @@ import java.util.Optional;
 public interface BaseRepository<T, ID> {
     T save(T entity) throws Exception;
     Optional<T> findById(ID id) throws Exception;
+    /** Rekordy o podanych id w kolejności wejścia (bez duplikatów; brakujące pominięte) */
+    default List<T> findAllById(Collection<ID> ids) throws Exception {
+        List<T> found = new ArrayList<>(ids.size());
+        for (ID id : new LinkedHashSet<>(ids))
+            findById(id).ifPresent(found::add);
+        return found;
+    }
     List<T> findAll() throws Exception;
     List<T> findAll(int page, int size, String sortBy, boolean asc) throws Exception; // strona od 0
+    List<T> findAll(Specification filter, int page, int size, String sortBy, boolean asc) throws Exception; // filtr po stronie bazy
+    Page<T> findPage(PageRequest request) throws Exception; // keyset + request.getFilter(); total przy withTotal()
+    Page<RowView> findRows(List<String> columns, PageRequest request) throws Exception; // projekcja wybranych kolumn
     T update(T entity) throws Exception;
     boolean deleteById(ID id) throws Exception;
+    boolean deleteById(ID id, int expectedVersion) throws Exception; // OptimisticLockException przy innej wersji
     long count() throws Exception;
-}
\ No newline at end of file
+
+    // ===== pełne przejście po tabeli bez materializowania listy =====
+
+    /** Przekazuje kolejno wszystkie rekordy do akcji (pamięć nie zależy od rozmiaru tabeli) */
+    default void forEachEntity(Consumer<? super T> action) throws Exception {
+        for (T entity : findAll())
+            action.accept(entity);
+    }
+
+    /**
+     * Leniwy strumień wszystkich rekordów. Trzyma otwarte zasoby (np.
+     * połączenie) - należy go zamknąć (try-with-resources).
+     */
+    default Stream<T> streamAll() throws Exception {
+        return findAll().stream();
+    }
+
+    // ===== operacje masowe - implementacje JDBC wykonują je wsadowo w jednej transakcji =====
+
+    default List<T> saveAll(Collection<T> entities) throws Exception {
+        List<T> saved = new ArrayList<>(entities.size());
+        for (T entity : entities)
+            saved.add(save(entity));
+        return saved;
+    }
+
+    default List<T> updateAll(Collection<T> entities) throws Exception {
+        List<T> updated = new ArrayList<>(entities.size());
+        for (T entity : entities)
+            updated.add(update(entity));
+        return updated;
+    }
+
+    /**
+     * Wstawia lub aktualizuje rekordy po kluczu zewnętrznym (externalId) w
+     * jednym przebiegu, bez odczytu przed zapisem. Id encji nie są uzupełniane.
+     */
+    void upsertAll(Collection<T> entities) throws Exception;
+
+    /** Zwraca liczbę usuniętych rekordów */
+    default int deleteAllById(Collection<ID> ids) throws Exception {
+        int deleted = 0;
+        for (ID id : ids)
+            if (deleteById(id))
+                deleted++;
+        return deleted;
+    }
+}
@@ -0,0 +1,117 @@
+package repository;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RowMapper z "kompilowanym" planem: nazwy potrzebnych kolumn są raz
+ * rozwiązywane na indeksy na podstawie ResultSetMetaData, a plan jest
+ * cache'owany per SQL. Mapowanie wiersza czyta kolumny po indeksie, każdą
+ * dokładnie raz.
+ *
+ * Kolumna nieobecna w wyniku ma indeks 0 - metody pomocnicze zwracają wtedy
+ * null / wartość domyślną.
+ */
+public abstract class CompiledRowMapper<T> implements RowMapper<T> {
+
+	/** Zabezpieczenie przed nieograniczonym wzrostem przy dynamicznym SQL */
+	private static final int MAX_PLANS = 256;
+
+	private final String[] columns;
+	private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+
+	protected CompiledRowMapper(String... columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Mapuje wiersz według indeksów kolumn (kolejność jak w konstruktorze).
+	 */
+	protected abstract T map(ResultSet rs, int[] index) throws SQLException;
+
+	/**
+	 * Mapowanie bez planu (rozwiązuje indeksy przy każdym wywołaniu) - tylko dla
+	 * pojedynczych wierszy, pętle powinny używać {@link #prepare}.
+	 */
+	@Override
+	public T map(ResultSet rs) throws SQLException {
+		return map(rs, resolve(rs.getMetaData()).index);
+	}
+
+	@Override
+	public RowMapper<T> prepare(String sql, ResultSet rs) throws SQLException {
+		Plan plan = plans.get(sql);
+		// liczba kolumn z metadanych jest dostępna po stronie klienta - tania walidacja
+		// planu (np. SELECT * po ALTER TABLE ADD COLUMN)
+		int columnCount = rs.getMetaData().getColumnCount();
+		if (plan == null || plan.columnCount != columnCount) {
+			plan = resolve(rs.getMetaData());
+			if (plans.size() >= MAX_PLANS)
+				plans.clear();
+			plans.put(sql, plan);
+		}
+		int[] index = plan.index;
+		return row -> map(row, index);
+	}
+
+	private Plan resolve(ResultSetMetaData meta) throws SQLException {
+		int count = meta.getColumnCount();
+		int[] index = new int[columns.length];
+		for (int i = 1; i <= count; i++) {
+			String label = meta.getColumnLabel(i);
+			for (int c = 0; c < columns.length; c++) {
+				if (index[c] == 0 && columns[c].equalsIgnoreCase(label))
+					index[c] = i;
+			}
+		}
+		return new Plan(count, index);
+	}
+
+	// ===== odczyt po indeksie, bez podwójnych wywołań getX =====
+
+	protected static String getString(ResultSet rs, int index) throws SQLException {
+		return index == 0 ? null : rs.getString(index);
+	}
+
+	/** Jak rs.getInt: 0 dla NULL, a także dla brakującej kolumny */
+	protected static int getInt(ResultSet rs, int index) throws SQLException {
+		return index == 0 ? 0 : rs.getInt(index);
+	}
+
+	protected static Integer getInteger(ResultSet rs, int index) throws SQLException {
+		if (index == 0)
+			return null;
+		int v = rs.getInt(index);
+		return rs.wasNull() ? null : v;
+	}
+
+	protected static Double getDouble(ResultSet rs, int index) throws SQLException {
+		if (index == 0)
+			return null;
+		double v = rs.getDouble(index);
+		return rs.wasNull() ? null : v;
+	}
+
+	protected static boolean getBoolean(ResultSet rs, int index) throws SQLException {
+		return index != 0 && rs.getBoolean(index);
+	}
+
+	protected static byte[] getBytes(ResultSet rs, int index) throws SQLException {
+		return index == 0 ? null : rs.getBytes(index);
+	}
+
+	protected static LocalDate getLocalDate(ResultSet rs, int index) throws SQLException {
+		if (index == 0)
+			return null;
+		Date d = rs.getDate(index);
+		return d == null ? null : d.toLocalDate();
+	}
+
+	private record Plan(int columnCount, int[] index) {
+	}
+}
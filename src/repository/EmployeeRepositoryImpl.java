@@ -2,145 +2,234 @@ package repository;
 
 import model.Employee;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class EmployeeRepositoryImpl extends JdbcRepository<Employee, Integer> implements EmployeeRepository {
 
-	public EmployeeRepositoryImpl(Connection connection) {
-		super(connection);
+	private static final String INSERT_SQL = "INSERT INTO persons (kind, name, surname, age, salary, position, date_of_birth, start_date, external_id) VALUES ('EMPLOYEE', ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String UPDATE_SQL = "UPDATE persons SET name=?, surname=?, age=?, salary=?, position=?, date_of_birth=?, start_date=?, external_id=?, version=version+1 WHERE id=? AND kind='EMPLOYEE' AND version=?";
+	private static final String DELETE_SQL = "DELETE FROM persons WHERE id = ? AND kind = 'EMPLOYEE'";
+	// upsert po kluczu (kind, external_id) - składnia zależy od dialektu
+	private static final List<String> UPSERT_KEY = List.of("kind", "external_id");
+	private static final List<String> UPSERT_COLUMNS = List.of("name", "surname", "age", "salary", "position", "date_of_birth", "start_date");
+
+	static final CompiledRowMapper<Employee> ROW_MAPPER = new CompiledRowMapper<>("id", "name", "surname", "age",
+			"date_of_birth", "start_date", "salary", "position", "version", "external_id") {
+		@Override
+		protected Employee map(ResultSet rs, int[] c) throws SQLException {
+			Employee employee = new Employee(rs.getInt(c[0]), rs.getString(c[1]), rs.getString(c[2]), rs.getInt(c[3]),
+					getLocalDate(rs, c[4]), getLocalDate(rs, c[5]), rs.getDouble(c[6]), rs.getString(c[7]));
+			employee.setVersion(getInt(rs, c[8]));
+			employee.setExternalId(getString(rs, c[9]));
+			employee.markClean();
+			return employee;
+		}
+	};
+
+	public EmployeeRepositoryImpl(DataSource dataSource) {
+		super(dataSource);
 	}
 
 	@Override
 	public Employee save(Employee entity) throws SQLException {
-		String sql = "INSERT INTO persons (name, surname, age, salary, position, date_of_birth, start_date) VALUES (?, ?, ?, ?, ?, ?, ?)";
-		try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-			ps.setString(1, entity.getName());
-			ps.setString(2, entity.getSurname());
-			if (entity.getAge() != null)
-				ps.setInt(3, entity.getAge());
-			else
-				ps.setNull(3, Types.INTEGER);
-			if (entity.getSalary() != null)
-				ps.setDouble(4, entity.getSalary());
-			else
-				ps.setNull(4, Types.DOUBLE);
-			ps.setString(5, entity.getPosition());
-			if (entity.getDateOfBirth() != null)
-				ps.setDate(6, Date.valueOf(entity.getDateOfBirth()));
-			else
-				ps.setNull(6, Types.DATE);
-			if (entity.getStartDate() != null)
-				ps.setDate(7, Date.valueOf(entity.getStartDate()));
-			else
-				ps.setNull(7, Types.DATE);
-
-			ps.executeUpdate();
-			try (ResultSet rs = ps.getGeneratedKeys()) {
-				if (rs.next())
-					entity.setId(rs.getInt(1));
-			}
-			return entity;
-		}
+		return insert(INSERT_SQL, entity, this::bindInsert, this::saved);
 	}
 
 	@Override
 	public Optional<Employee> findById(Integer id) throws SQLException {
-		String sql = "SELECT * FROM persons WHERE id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+		String sql = "SELECT * FROM persons WHERE id = ? AND kind = 'EMPLOYEE'";
+		try (Connection connection = getReadConnection(); PreparedStatement ps = prepare(connection, sql)) {
 			ps.setInt(1, id);
 			try (ResultSet rs = ps.executeQuery()) {
 				if (rs.next())
-					return Optional.of(mapRowToEmployee(rs));
+					return Optional.of(ROW_MAPPER.prepare(sql, rs).map(rs));
 			}
 		}
 		return Optional.empty();
 	}
 
+	@Override
+	public List<Employee> findAllById(Collection<Integer> ids) throws SQLException {
+		return queryByIds("persons", "kind = 'EMPLOYEE'", ids, ROW_MAPPER, Employee::getId);
+	}
+
 	@Override
 	public List<Employee> findAll() throws SQLException {
-		String sql = "SELECT * FROM persons WHERE salary IS NOT NULL";
-		try (PreparedStatement ps = connection.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+		String sql = "SELECT * FROM persons WHERE kind = 'EMPLOYEE'";
+		try (Connection connection = getReadConnection();
+				PreparedStatement ps = prepare(connection, sql); ResultSet rs = ps.executeQuery()) {
+			RowMapper<Employee> mapper = ROW_MAPPER.prepare(sql, rs);
 			List<Employee> list = new ArrayList<>();
 			while (rs.next())
-				list.add(mapRowToEmployee(rs));
+				list.add(mapper.map(rs));
 			return list;
 		}
 	}
 
+	@Override
+	public void forEachEntity(Consumer<? super Employee> action) throws SQLException {
+		queryEach("SELECT * FROM persons WHERE kind = 'EMPLOYEE'", ROW_MAPPER, action);
+	}
+
+	@Override
+	public Stream<Employee> streamAll() throws SQLException {
+		return queryStream("SELECT * FROM persons WHERE kind = 'EMPLOYEE'", ROW_MAPPER);
+	}
+
 	@Override
 	public List<Employee> findAll(int page, int size, String sortBy, boolean asc) throws SQLException {
-		String order = (sortBy == null || sortBy.isBlank()) ? "id" : sortBy;
-		String direction = asc ? "ASC" : "DESC";
-		int offset = page * size;
-		String sql = String.format("SELECT * FROM persons WHERE salary IS NOT NULL ORDER BY %s %s LIMIT ? OFFSET ?",
-				order, direction);
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setInt(1, size);
-			ps.setInt(2, offset);
-			try (ResultSet rs = ps.executeQuery()) {
-				List<Employee> list = new ArrayList<>();
-				while (rs.next())
-					list.add(mapRowToEmployee(rs));
-				return list;
-			}
-		}
+		return findAll(Specification.all(), page, size, sortBy, asc);
+	}
+
+	@Override
+	public List<Employee> findAll(Specification filter, int page, int size, String sortBy, boolean asc)
+			throws SQLException {
+		return queryOffset("persons", "kind = 'EMPLOYEE'", filter, page, size, sortBy, asc, ROW_MAPPER);
+	}
+
+	@Override
+	public Page<Employee> findPage(PageRequest request) throws SQLException {
+		return queryPage("*", "persons", "kind = 'EMPLOYEE'", request, ROW_MAPPER);
+	}
+
+	@Override
+	public Page<RowView> findRows(List<String> columns, PageRequest request) throws SQLException {
+		return queryRows("persons", "kind = 'EMPLOYEE'", columns, request);
 	}
 
 	@Override
 	public Employee update(Employee entity) throws SQLException {
-		String sql = "UPDATE persons SET name=?, surname=?, age=?, salary=?, position=?, date_of_birth=?, start_date=? WHERE id=?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setString(1, entity.getName());
-			ps.setString(2, entity.getSurname());
-			if (entity.getAge() != null)
-				ps.setInt(3, entity.getAge());
-			else
-				ps.setNull(3, Types.INTEGER);
-			if (entity.getSalary() != null)
-				ps.setDouble(4, entity.getSalary());
-			else
-				ps.setNull(4, Types.DOUBLE);
-			ps.setString(5, entity.getPosition());
-			if (entity.getDateOfBirth() != null)
-				ps.setDate(6, Date.valueOf(entity.getDateOfBirth()));
-			else
-				ps.setNull(6, Types.DATE);
-			if (entity.getStartDate() != null)
-				ps.setDate(7, Date.valueOf(entity.getStartDate()));
-			else
-				ps.setNull(7, Types.DATE);
-			ps.setInt(8, entity.getId());
-			ps.executeUpdate();
+		if (entity.isTracked()) {
+			// encja odczytana z bazy: tylko zmienione kolumny, a bez zmian - bez UPDATE
+			if (entity.isDirty()) {
+				if (updateColumns("persons", "kind = 'EMPLOYEE'", entity.getId(), entity.getVersion(),
+						PersonColumns.dirtyValues(entity)) == 0)
+					throw conflict(entity);
+				entity.setVersion(entity.getVersion() + 1);
+			}
+			entity.markClean();
+			return entity;
+		}
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, UPDATE_SQL)) {
+			bindUpdate(ps, entity);
+			if (ps.executeUpdate() == 0)
+				throw conflict(entity);
+			entity.setVersion(entity.getVersion() + 1);
+			entity.markClean();
 			return entity;
 		}
 	}
 
 	@Override
 	public boolean deleteById(Integer id) throws SQLException {
-		String sql = "DELETE FROM persons WHERE id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, DELETE_SQL)) {
 			ps.setInt(1, id);
 			return ps.executeUpdate() > 0;
 		}
 	}
 
+	@Override
+	public boolean deleteById(Integer id, int expectedVersion) throws SQLException {
+		return deleteVersioned("persons", "kind = 'EMPLOYEE'", "Employee", id, expectedVersion);
+	}
+
+	@Override
+	public List<Employee> saveAll(Collection<Employee> entities) throws SQLException {
+		return batchInsert(INSERT_SQL, entities, this::bindInsert, this::saved);
+	}
+
+	@Override
+	public void upsertAll(Collection<Employee> entities) throws SQLException {
+		for (Employee entity : entities)
+			if (entity.getExternalId() == null || entity.getExternalId().isBlank())
+				throw new IllegalArgumentException("upsertAll requires externalId: " + entity);
+		// INSERT ... ON DUPLICATE KEY UPDATE (MERGE w H2) po (kind, external_id) - porcjami, jedna transakcja
+		batchUpsert(INSERT_SQL, UPSERT_KEY, UPSERT_COLUMNS, entities, this::bindInsert);
+	}
+
+	@Override
+	public List<Employee> updateAll(Collection<Employee> entities) throws SQLException {
+		List<Employee> list = new ArrayList<>(entities);
+		// batch ma jeden kształt SQL (wszystkie kolumny) - pomijamy tylko encje bez zmian
+		List<Employee> changed = new ArrayList<>(list.size());
+		for (Employee entity : list)
+			if (!entity.isTracked() || entity.isDirty())
+				changed.add(entity);
+		batchUpdate(UPDATE_SQL, changed, this::bindUpdate, this::conflict);
+		for (Employee entity : changed) {
+			entity.setVersion(entity.getVersion() + 1);
+			entity.markClean();
+		}
+		return list;
+	}
+
+	@Override
+	public int deleteAllById(Collection<Integer> ids) throws SQLException {
+		return batchUpdate(DELETE_SQL, ids, (ps, id) -> ps.setInt(1, id));
+	}
+
 	@Override
 	public long count() throws SQLException {
-		String sql = "SELECT COUNT(*) FROM persons WHERE salary IS NOT NULL";
-		try (PreparedStatement ps = connection.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+		String sql = "SELECT COUNT(*) FROM persons WHERE kind = 'EMPLOYEE'";
+		try (Connection connection = getReadConnection();
+				PreparedStatement ps = prepare(connection, sql); ResultSet rs = ps.executeQuery()) {
 			if (rs.next())
 				return rs.getLong(1);
 			return 0L;
 		}
 	}
 
-	protected Employee mapRowToEmployee(ResultSet rs) throws SQLException {
-		return new Employee(rs.getInt("id"), rs.getString("name"), rs.getString("surname"), rs.getInt("age"),
-				rs.getDate("date_of_birth") != null ? rs.getDate("date_of_birth").toLocalDate() : null,
-				rs.getDate("start_date") != null ? rs.getDate("start_date").toLocalDate() : null,
-				rs.getDouble("salary"), rs.getString("position"));
+	// nowy wiersz: id z bazy albo z generatora, wersja początkowa
+	private void saved(Employee entity, long id) {
+		entity.setId((int) id);
+		entity.setVersion(0);
+		entity.markClean();
+	}
+
+	// UPDATE nie zmienił wiersza: ktoś go zmienił (inna wersja) lub usunął
+	private OptimisticLockException conflict(Employee entity) {
+		return new OptimisticLockException("Employee", entity.getId(), entity.getVersion());
+	}
+
+	// wspólne bindowanie kolumn dla INSERT i UPDATE (parametry 1..7)
+	private void bindColumns(PreparedStatement ps, Employee entity) throws SQLException {
+		ps.setString(1, entity.getName());
+		ps.setString(2, entity.getSurname());
+		if (entity.getAge() != null)
+			ps.setInt(3, entity.getAge());
+		else
+			ps.setNull(3, Types.INTEGER);
+		if (entity.getSalary() != null)
+			ps.setDouble(4, entity.getSalary());
+		else
+			ps.setNull(4, Types.DOUBLE);
+		ps.setString(5, entity.getPosition());
+		if (entity.getDateOfBirth() != null)
+			ps.setDate(6, Date.valueOf(entity.getDateOfBirth()));
+		else
+			ps.setNull(6, Types.DATE);
+		if (entity.getStartDate() != null)
+			ps.setDate(7, Date.valueOf(entity.getStartDate()));
+		else
+			ps.setNull(7, Types.DATE);
+	}
+
+	private void bindInsert(PreparedStatement ps, Employee entity) throws SQLException {
+		bindColumns(ps, entity);
+		ps.setString(8, entity.getExternalId());
+	}
+
+	private void bindUpdate(PreparedStatement ps, Employee entity) throws SQLException {
+		bindColumns(ps, entity);
+		ps.setString(8, entity.getExternalId());
+		ps.setInt(9, entity.getId());
+		ps.setInt(10, entity.getVersion());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Generator id metodą hi-lo: z tabeli id_sequences rezerwowany jest cały blok
+ * blockSize kolejnych wartości jednym UPDATE, a id z bloku wydawane są z
+ * pamięci. Baza jest odpytywana raz na blok zamiast przy każdym INSERT.
+ *
+ * Wszystkie zapisy do tabeli muszą wtedy brać id z generatora tej samej
+ * sekwencji - INSERT z AUTO_INCREMENT mógłby zająć id z zarezerwowanego
+ * bloku. Id z bloku niewykorzystanego przed restartem przepadają (luki).
+ *
+ * W MySQL blok rezerwuje UPDATE z LAST_INSERT_ID(expr); w pozostałych
+ * dialektach UPDATE i odczyt next_val w jednej krótkiej transakcji.
+ *
+ * Rezerwacje idą przez własne połączenie generatora, wypożyczone przy
+ * pierwszej rezerwacji i trzymane do {@link #close()}: wywołujący może już
+ * trzymać połączenie z puli (transakcja, batch), a drugie wypożyczenie przy
+ * wyczerpanej puli czekałoby na połączenia trzymane przez innych takich
+ * wywołujących. Generator zajmuje więc na stałe jedno połączenie z puli.
+ */
+public class HiLoIdGenerator extends JdbcSupport implements IdGenerator, AutoCloseable {
+
+	private static final String RESERVE_SQL = "UPDATE id_sequences SET next_val = LAST_INSERT_ID(next_val + ?) WHERE name = ?";
+	private static final String ADVANCE_SQL = "UPDATE id_sequences SET next_val = next_val + ? WHERE name = ?";
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	private final String sequence;
+	private final String seedTable;
+	private final int blockSize;
+
+	// chronione przez this; next > max = blok wyczerpany
+	private long next = 1;
+	private long max;
+	// własne połączenie generatora (autocommit), chronione przez this
+	private Connection connection;
+
+	/**
+	 * @param sequence  nazwa sekwencji (wiersz id_sequences)
+	 * @param seedTable tabela, od której MAX(id) startuje nowa sekwencja
+	 * @param blockSize liczba id rezerwowanych jednym zapytaniem
+	 */
+	public HiLoIdGenerator(DataSource dataSource, String sequence, String seedTable, int blockSize) {
+		super(dataSource);
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("Block size must be positive");
+		this.sequence = sequence;
+		this.seedTable = seedTable;
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	public synchronized long nextId() throws SQLException {
+		if (next > max) {
+			long hi = reserveBlock();
+			next = hi - blockSize + 1;
+			max = hi;
+		}
+		return next++;
+	}
+
+	// własne połączenie w autocommit - rezerwacja nie jest wycofywana razem z transakcją zapisu
+	private long reserveBlock() throws SQLException {
+		Connection connection = connection();
+		try {
+			long hi = reserve(connection);
+			if (hi < 0) {
+				seed(connection);
+				hi = reserve(connection);
+				if (hi < 0)
+					throw new SQLException("Sequence '" + sequence + "' not found in id_sequences");
+			}
+			return hi;
+		} catch (SQLException e) {
+			// następna rezerwacja zacznie od sprawdzenia połączenia
+			if (!isValid(connection))
+				release();
+			throw e;
+		}
+	}
+
+	// połączenie zerwane między rezerwacjami (np. wait_timeout po długiej przerwie) jest wymieniane
+	private Connection connection() throws SQLException {
+		if (connection != null && !isValid(connection))
+			release();
+		if (connection == null) {
+			// poza TransactionTemplate - dataSource.getConnection(), nie połączenie bieżącej transakcji
+			Connection leased = dataSource.getConnection();
+			leased.setAutoCommit(true);
+			connection = leased;
+		}
+		return connection;
+	}
+
+	private static boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void release() {
+		try {
+			connection.close();
+		} catch (SQLException ignored) {
+			// połączenie i tak jest porzucane
+		} finally {
+			connection = null;
+		}
+	}
+
+	/** Oddaje połączenie generatora do puli; kolejna rezerwacja wypożyczy nowe */
+	@Override
+	public synchronized void close() {
+		if (connection != null)
+			release();
+	}
+
+	private long reserve(Connection connection) throws SQLException {
+		return dialect(connection).supportsLastInsertId() ? reserveWithLastInsertId(connection) : reserveInTransaction(connection);
+	}
+
+	// LAST_INSERT_ID(expr) zapamiętuje wartość per połączenie - odczyt bez blokowania wiersza SELECT ... FOR UPDATE
+	private long reserveWithLastInsertId(Connection connection) throws SQLException {
+		try (PreparedStatement ps = prepare(connection, RESERVE_SQL)) {
+			ps.setInt(1, blockSize);
+			ps.setString(2, sequence);
+			if (ps.executeUpdate() == 0)
+				return -1;
+		}
+		try (PreparedStatement ps = prepare(connection, "SELECT LAST_INSERT_ID()");
+				ResultSet rs = ps.executeQuery()) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	// blokada wiersza z UPDATE trzyma sekwencję do commit, więc SELECT widzi własną rezerwację
+	private long reserveInTransaction(Connection connection) throws SQLException {
+		connection.setAutoCommit(false);
+		try {
+			long hi = -1;
+			try (PreparedStatement ps = prepare(connection, ADVANCE_SQL)) {
+				ps.setInt(1, blockSize);
+				ps.setString(2, sequence);
+				if (ps.executeUpdate() > 0) {
+					try (PreparedStatement select = prepare(connection,
+							"SELECT next_val FROM id_sequences WHERE name = ?")) {
+						select.setString(1, sequence);
+						try (ResultSet rs = select.executeQuery()) {
+							rs.next();
+							hi = rs.getLong(1);
+						}
+					}
+				}
+			}
+			connection.commit();
+			return hi;
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	// pierwsze użycie sekwencji: start za największym istniejącym id (IGNORE - inny klient mógł ją już założyć)
+	private void seed(Connection connection) throws SQLException {
+		String sql = dialect(connection).insertIgnore(
+				"INSERT INTO id_sequences (name, next_val) SELECT ?, COALESCE(MAX(id), 0) FROM " + seedTable,
+				List.of("name"));
+		try (PreparedStatement ps = prepare(connection, sql)) {
+			ps.setString(1, sequence);
+			ps.executeUpdate();
+		}
+	}
+}
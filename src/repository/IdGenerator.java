@@ -0,0 +1,12 @@
+package repository;
+
+import java.sql.SQLException;
+
+/**
+ * Nadawanie id po stronie aplikacji - INSERT dostaje gotowe id zamiast
+ * odczytywać klucz wygenerowany przez bazę (AUTO_INCREMENT).
+ */
+@FunctionalInterface
+public interface IdGenerator {
+	long nextId() throws SQLException;
+}
@@ -1,17 +1,704 @@
 package repository;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
 
 /**
- * Klasa bazowa dla implementacji JDBC. Trzyma Connection i wspólne utilsy.
+ * Klasa bazowa dla implementacji JDBC. Trzyma DataSource i wspólne utilsy.
  * Konkretne repozytoria wykonują mapowanie z ResultSet -> encja.
  */
-public abstract class JdbcRepository<T, ID> implements BaseRepository<T, ID> {
-    protected final Connection connection;
+public abstract class JdbcRepository<T, ID> extends JdbcSupport implements BaseRepository<T, ID> {
+
+    /** Kolumny, po których wolno sortować (nazwy trafiają wprost do SQL) */
+    protected static final Set<String> SORTABLE_COLUMNS = Set.of("id", "name", "surname", "age", "date_of_birth",
+            "start_date", "salary", "position", "university", "year");
+
+    /** Kolumny, które można projektować: sortowalne i wersja wiersza (do kontroli wersji w GUI) */
+    protected static final Set<String> PROJECTABLE_COLUMNS = Set.of("id", "name", "surname", "age", "date_of_birth",
+            "start_date", "salary", "position", "university", "year", "version");
+
+    /** Kolumny, które wolno zmieniać częściowym UPDATE (id i version ustawia tylko repozytorium) */
+    private static final Set<String> UPDATABLE_COLUMNS = Set.of("name", "surname", "age", "date_of_birth",
+            "start_date", "salary", "position", "university", "year", "external_id");
+
+    /** Kolumny DATE - w projekcji czytane jako tekst, bez obiektów Date/LocalDate */
+    private static final Set<String> DATE_COLUMNS = Set.of("date_of_birth", "start_date");
+
+    /**
+     * Liczba wierszy pobieranych na raz przy strumieniowaniu. Przy
+     * useCursorFetch=true MySQL otwiera kursor po stronie serwera i odsyła
+     * wiersze porcjami, zamiast całego wyniku.
+     */
+    protected static final int STREAM_FETCH_SIZE = 1000;
+
+    /**
+     * Największa lista IN w jednym zapytaniu. Listy są dopełniane do potęgi
+     * dwójki, więc każde repozytorium ma najwyżej kilka kształtów SQL (1, 2,
+     * 4 ... MAX_IN_LIST), które zostają w cache statementów.
+     */
+    protected static final int MAX_IN_LIST = 256;
+
+    // "?, ?, ..." dla każdego rozmiaru listy IN
+    private static final String[] IN_PLACEHOLDERS = new String[MAX_IN_LIST + 1];
+
+    static {
+        for (int n = 1; n <= MAX_IN_LIST; n <<= 1)
+            IN_PLACEHOLDERS[n] = String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    /** Alias kolumny z łączną liczbą rekordów w zapytaniu strony */
+    private static final String TOTAL_COLUMN = "total_count";
+
+    /** Domyślna liczba wierszy wysyłanych w jednym executeBatch */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    private volatile IdGenerator idGenerator;
+
+    private static final Map<String, String> WITH_ID_COLUMN = new ConcurrentHashMap<>();
+
+    protected JdbcRepository(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    /** Ustawia rozmiar porcji (chunk) dla operacji saveAll/updateAll/deleteAllById */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /** Ustawia parametry statementu dla jednego elementu */
+    @FunctionalInterface
+    protected interface StatementBinder<E> {
+        void bind(PreparedStatement ps, E item) throws SQLException;
+    }
+
+    /** Przypisuje nadane id do zapisanej encji (i oznacza ją jako zapisaną) */
+    @FunctionalInterface
+    protected interface IdAssigner<E> {
+        void assign(E entity, long id) throws SQLException;
+    }
+
+    /**
+     * Włącza nadawanie id przez aplikację (np. {@link HiLoIdGenerator}) zamiast
+     * AUTO_INCREMENT: INSERT dostaje id jako parametr, bez odczytu
+     * getGeneratedKeys. null przywraca AUTO_INCREMENT. Repozytoria zapisujące
+     * tę samą tabelę muszą używać tego samego generatora.
+     */
+    public void setIdGenerator(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Pojedynczy INSERT. Id pochodzi z generatora (jeśli ustawiony) albo z
+     * klucza wygenerowanego przez bazę.
+     *
+     * @param sql INSERT bez kolumny id; przy generatorze id jest dopisywane jako ostatni parametr
+     */
+    protected T insert(String sql, T entity, StatementBinder<T> binder, IdAssigner<T> idAssigner)
+            throws SQLException {
+        IdGenerator generator = idGenerator;
+        if (generator != null) {
+            long id = generator.nextId();
+            String sqlWithId = withIdColumn(sql);
+            try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, sqlWithId)) {
+                binder.bind(ps, entity);
+                ps.setLong(parameterCount(sqlWithId), id);
+                ps.executeUpdate();
+            }
+            idAssigner.assign(entity, id);
+            return entity;
+        }
+        try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, sql, true)) {
+            binder.bind(ps, entity);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next())
+                    idAssigner.assign(entity, rs.getLong(1));
+            }
+            return entity;
+        }
+    }
+
+    /**
+     * Wsadowy INSERT: porcje po batchSize wierszy (addBatch/executeBatch) w
+     * jednej transakcji. Przy rewriteBatchedStatements=true sterownik MySQL
+     * skleja porcję w jeden INSERT z wieloma VALUES. Wygenerowane klucze
+     * przypisywane są do encji w kolejności wstawiania; przy generatorze id są
+     * nadawane przed wysłaniem i przypisywane po commicie.
+     */
+    protected List<T> batchInsert(String sql, Collection<T> entities, StatementBinder<T> binder,
+            IdAssigner<T> idAssigner) throws SQLException {
+        List<T> result = new ArrayList<>(entities);
+        if (result.isEmpty())
+            return result;
+        IdGenerator generator = idGenerator;
+        if (generator != null) {
+            long[] ids = new long[result.size()];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = generator.nextId();
+            String sqlWithId = withIdColumn(sql);
+            int idParameter = parameterCount(sqlWithId);
+            // batchUpdate wiąże elementy po kolei - i-ty element dostaje ids[i]
+            int[] next = { 0 };
+            batchUpdate(sqlWithId, result, (ps, entity) -> {
+                binder.bind(ps, entity);
+                ps.setLong(idParameter, ids[next[0]++]);
+            });
+            for (int i = 0; i < ids.length; i++)
+                idAssigner.assign(result.get(i), ids[i]);
+            return result;
+        }
+        int chunkSize = batchSize;
+        return inTransaction(connection -> {
+            try (PreparedStatement ps = prepare(connection, sql, true)) {
+                for (int from = 0; from < result.size(); from += chunkSize) {
+                    List<T> chunk = result.subList(from, Math.min(from + chunkSize, result.size()));
+                    for (T entity : chunk) {
+                        binder.bind(ps, entity);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        Iterator<T> it = chunk.iterator();
+                        while (it.hasNext() && keys.next())
+                            idAssigner.assign(it.next(), keys.getLong(1));
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Wsadowy upsert po kluczu unikalnym (dialekt: ON DUPLICATE KEY UPDATE /
+     * MERGE) w jednej transakcji; przy konflikcie wersja rośnie o 1. Przy
+     * generatorze nowe wiersze dostają id z generatora jak w
+     * {@link #batchInsert} - id wiersza zaktualizowanego zostaje bez zmian, a
+     * nadane mu id przepada (luka).
+     *
+     * @param sql INSERT bez kolumny id
+     */
+    protected int batchUpsert(String sql, List<String> keyColumns, List<String> updateColumns,
+            Collection<T> entities, StatementBinder<T> binder) throws SQLException {
+        if (entities.isEmpty())
+            return 0;
+        IdGenerator generator = idGenerator;
+        if (generator == null)
+            return batchUpdate(dialect().upsert(sql, keyColumns, updateColumns, "version"), entities, binder);
+        // id nadawane przed transakcją - rezerwacja bloku nie czeka na połączenie trzymane przez batch
+        long[] ids = new long[entities.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = generator.nextId();
+        String sqlWithId = withIdColumn(sql);
+        int idParameter = parameterCount(sqlWithId);
+        int[] next = { 0 };
+        return batchUpdate(dialect().upsert(sqlWithId, keyColumns, updateColumns, "version"), entities,
+                (ps, entity) -> {
+                    binder.bind(ps, entity);
+                    ps.setLong(idParameter, ids[next[0]++]);
+                });
+    }
+
+    /**
+     * "INSERT INTO t (a, b) VALUES (?, ?)" -> "INSERT INTO t (a, b, id) VALUES
+     * (?, ?, ?)". Wynik jest cache'owany, więc ten sam tekst trafia do cache
+     * statementów.
+     */
+    protected static String withIdColumn(String insertSql) {
+        return WITH_ID_COLUMN.computeIfAbsent(insertSql, sql -> {
+            int columnsEnd = sql.indexOf(") VALUES (");
+            if (!sql.startsWith("INSERT INTO ") || columnsEnd < 0 || !sql.endsWith(")"))
+                throw new IllegalArgumentException("Unsupported INSERT: " + sql);
+            return sql.substring(0, columnsEnd) + ", id" + sql.substring(columnsEnd, sql.length() - 1) + ", ?)";
+        });
+    }
+
+    // stałe SQL repozytoriów nie mają '?' w literałach
+    private static int parameterCount(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++)
+            if (sql.charAt(i) == '?')
+                count++;
+        return count;
+    }
+
+    /**
+     * Wsadowy UPDATE/DELETE w porcjach po batchSize w jednej transakcji. Zwraca
+     * sumę zmienionych wierszy (wiersze, dla których sterownik zwrócił
+     * SUCCESS_NO_INFO, nie są liczone).
+     */
+    protected <E> int batchUpdate(String sql, Collection<E> items, StatementBinder<E> binder) throws SQLException {
+        return batchUpdate(sql, items, binder, null);
+    }
 
-    protected JdbcRepository(Connection connection) {
-        this.connection = connection;
+    /**
+     * Jak wyżej, ale każdy element musi zmienić wiersz - dla elementu z
+     * licznikiem 0 (np. niezgodna wersja) rzucany jest wyjątek z onNoRow, a
+     * cała transakcja jest wycofywana.
+     *
+     * @param onNoRow fabryka wyjątku dla elementu bez zmienionego wiersza lub null
+     */
+    protected <E> int batchUpdate(String sql, Collection<E> items, StatementBinder<E> binder,
+            Function<E, ? extends RuntimeException> onNoRow) throws SQLException {
+        if (items.isEmpty())
+            return 0;
+        int chunkSize = batchSize;
+        return inTransaction(connection -> {
+            int affected = 0;
+            try (PreparedStatement ps = prepare(connection, sql)) {
+                List<E> chunk = new ArrayList<>(Math.min(chunkSize, items.size()));
+                for (E item : items) {
+                    binder.bind(ps, item);
+                    ps.addBatch();
+                    chunk.add(item);
+                    if (chunk.size() == chunkSize) {
+                        affected += executeChunk(ps, chunk, onNoRow);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty())
+                    affected += executeChunk(ps, chunk, onNoRow);
+            }
+            return affected;
+        });
     }
 
-    // Możesz dodać tutaj wspólne metody helper (closeQuietly, transakcje, itp.)
-}
\ No newline at end of file
+    private static <E> int executeChunk(PreparedStatement ps, List<E> chunk,
+            Function<E, ? extends RuntimeException> onNoRow) throws SQLException {
+        int[] counts = ps.executeBatch();
+        if (onNoRow != null) {
+            for (int i = 0; i < counts.length && i < chunk.size(); i++)
+                if (counts[i] == 0)
+                    throw onNoRow.apply(chunk.get(i));
+        }
+        return sumUpdateCounts(counts);
+    }
+
+    private static int sumUpdateCounts(int[] counts) throws SQLException {
+        int sum = 0;
+        for (int c : counts) {
+            if (c > 0)
+                sum += c;
+            else if (c == Statement.EXECUTE_FAILED)
+                throw new SQLException("Batch statement failed");
+        }
+        return sum;
+    }
+
+    /**
+     * Częściowy UPDATE tylko podanych kolumn ({@code SET a = ?, b = ?}) -
+     * mniej redo/binlogu i brak przebudowy indeksów na niezmienionych
+     * kolumnach. Liczba kształtów SQL jest ograniczona liczbą kombinacji
+     * kolumn, więc trafiają do cache statementów. Zwraca liczbę zmienionych
+     * wierszy.
+     *
+     * @param where dodatkowy warunek bez słowa WHERE lub null
+     */
+    protected int updateColumns(String table, String where, Object id, Map<String, Object> columns)
+            throws SQLException {
+        return updateColumns(table, where, id, null, columns);
+    }
+
+    /**
+     * Częściowy UPDATE z kontrolą wersji: {@code version = version + 1} oraz
+     * {@code AND version = ?}. Dla expectedVersion == null bez kontroli.
+     */
+    protected int updateColumns(String table, String where, Object id, Integer expectedVersion,
+            Map<String, Object> columns) throws SQLException {
+        if (columns.isEmpty())
+            throw new IllegalArgumentException("No columns to update");
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        boolean first = true;
+        for (String column : columns.keySet()) {
+            if (!UPDATABLE_COLUMNS.contains(column))
+                throw new IllegalArgumentException("Unknown column: " + column);
+            if (!first)
+                sql.append(", ");
+            sql.append(column).append(" = ?");
+            first = false;
+        }
+        if (expectedVersion != null)
+            sql.append(", version = version + 1");
+        sql.append(" WHERE ").append(and("id = ?", where));
+        if (expectedVersion != null)
+            sql.append(" AND version = ?");
+
+        try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, sql.toString())) {
+            int index = 1;
+            for (Object value : columns.values()) {
+                if (value == null)
+                    ps.setNull(index++, Types.NULL);
+                else
+                    ps.setObject(index++, value);
+            }
+            ps.setObject(index++, id);
+            if (expectedVersion != null)
+                ps.setInt(index, expectedVersion);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * DELETE z kontrolą wersji. Zwraca false, gdy rekordu nie ma; rzuca
+     * OptimisticLockException, gdy istnieje, ale w innej wersji.
+     *
+     * @param where dodatkowy warunek bez słowa WHERE lub null
+     */
+    protected boolean deleteVersioned(String table, String where, String entity, Object id, int expectedVersion)
+            throws SQLException {
+        String condition = and("id = ?", where);
+        try (Connection connection = getWriteConnection()) {
+            try (PreparedStatement ps = prepare(connection,
+                    "DELETE FROM " + table + " WHERE " + condition + " AND version = ?")) {
+                ps.setObject(1, id);
+                ps.setInt(2, expectedVersion);
+                if (ps.executeUpdate() > 0)
+                    return true;
+            }
+            // nic nie usunięto - odróżniamy brak rekordu od konfliktu wersji
+            try (PreparedStatement ps = prepare(connection, "SELECT 1 FROM " + table + " WHERE " + condition)) {
+                ps.setObject(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next())
+                        throw new OptimisticLockException(entity, id, expectedVersion);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Strona metodą LIMIT/OFFSET z filtrem. Kolumna sortowania przechodzi przez
+     * whitelistę sortColumn (nazw kolumn nie da się przekazać jako parametr),
+     * wartości filtra są parametrami.
+     *
+     * @param where dodatkowy warunek bez słowa WHERE lub null
+     */
+    protected List<T> queryOffset(String table, String where, Specification filter, int page, int size, String sortBy,
+            boolean asc, RowMapper<T> mapper) throws SQLException {
+        String conditions = and(where, filter.toSql());
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table);
+        if (conditions != null)
+            sql.append(" WHERE ").append(conditions);
+        String column = sortColumn(sortBy);
+        sql.append(" ORDER BY ").append(column).append(asc ? " ASC" : " DESC");
+        if (!"id".equals(column))
+            sql.append(asc ? ", id ASC" : ", id DESC");
+        sql.append(" LIMIT ? OFFSET ?");
+
+        List<Object> params = new ArrayList<>();
+        filter.addParameters(params);
+        params.add(size);
+        params.add(page * size);
+        try (Connection connection = getReadConnection(); PreparedStatement ps = prepare(connection, sql.toString())) {
+            for (int i = 0; i < params.size(); i++)
+                ps.setObject(i + 1, params.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<T> rowMapper = mapper.prepare(sql.toString(), rs);
+                List<T> list = new ArrayList<>(size);
+                while (rs.next())
+                    list.add(rowMapper.map(rs));
+                return list;
+            }
+        }
+    }
+
+    /**
+     * Pobiera wiele rekordów po id porcjami {@code id IN (...)} na jednym
+     * połączeniu - kilka zapytań zamiast jednego na id. Porcja jest dopełniana
+     * powtórzeniem ostatniego id do rozmiaru kształtu. Wynik zachowuje
+     * kolejność wejścia; duplikaty i brakujące id są pomijane.
+     *
+     * @param where dodatkowy warunek bez słowa WHERE lub null
+     */
+    protected List<T> queryByIds(String table, String where, Collection<ID> ids, RowMapper<T> mapper,
+            Function<T, ID> idOf) throws SQLException {
+        List<ID> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (distinct.isEmpty())
+            return new ArrayList<>();
+        String prefix = "SELECT * FROM " + table + " WHERE " + (where != null ? where + " AND " : "") + "id IN (";
+        Map<ID, T> found = new HashMap<>(distinct.size() * 2);
+        try (Connection connection = getReadConnection()) {
+            for (int from = 0; from < distinct.size(); from += MAX_IN_LIST) {
+                List<ID> chunk = distinct.subList(from, Math.min(from + MAX_IN_LIST, distinct.size()));
+                int shape = Integer.highestOneBit(chunk.size());
+                if (shape < chunk.size())
+                    shape <<= 1;
+                String sql = prefix + IN_PLACEHOLDERS[shape] + ")";
+                try (PreparedStatement ps = prepare(connection, sql)) {
+                    for (int i = 0; i < shape; i++)
+                        ps.setObject(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        RowMapper<T> rowMapper = mapper.prepare(sql, rs);
+                        while (rs.next()) {
+                            T entity = rowMapper.map(rs);
+                            found.put(idOf.apply(entity), entity);
+                        }
+                    }
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(found.size());
+        for (ID id : distinct) {
+            T entity = found.get(id);
+            if (entity != null)
+                result.add(entity);
+        }
+        return result;
+    }
+
+    /**
+     * Zwraca bezpieczną nazwę kolumny sortowania - nieznane lub puste wartości
+     * zamieniane są na "id".
+     */
+    protected static String sortColumn(String sortBy) {
+        if (sortBy == null || sortBy.isBlank())
+            return "id";
+        String column = sortBy.trim().toLowerCase();
+        return SORTABLE_COLUMNS.contains(column) ? column : "id";
+    }
+
+    /**
+     * Pobiera stronę metodą keyset: {@code WHERE (col, id) > (?, ?)} zamiast
+     * OFFSET, więc koszt nie rośnie wraz z numerem strony. Kolejność jest
+     * zawsze uzupełniana o id, żeby kursor był jednoznaczny.
+     *
+     * Przy {@link PageRequest#withTotal()} łączna liczba rekordów jest
+     * dołączana do wyniku podzapytaniem skalarnym (MySQL liczy je raz), więc
+     * strona i total to jeden round trip. COUNT(*) OVER() nie pasuje - liczyłby
+     * tylko wiersze za kursorem.
+     *
+     * @param columns lista kolumn SELECT (musi zawierać kolumnę sortowania i id)
+     * @param where   dodatkowy warunek bez słowa WHERE lub null
+     */
+    protected <R> Page<R> queryPage(String columns, String table, String where, PageRequest request,
+            RowMapper<R> mapper) throws SQLException {
+        String column = sortColumn(request.getSortBy());
+        String direction = request.isAsc() ? "ASC" : "DESC";
+        // warunek bazowy + filtr; parametry filtra idą raz dla podzapytania COUNT i raz dla WHERE
+        String filtered = and(where, request.getFilter().toSql());
+        List<Object> filterParams = new ArrayList<>();
+        request.getFilter().addParameters(filterParams);
+
+        List<Object> params = new ArrayList<>();
+        String countSql = "SELECT COUNT(*) FROM " + table + (filtered != null ? " WHERE " + filtered : "");
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns);
+        if (request.isWithTotal()) {
+            sql.append(", (").append(countSql).append(") AS ").append(TOTAL_COLUMN);
+            params.addAll(filterParams);
+        }
+        sql.append(" FROM ").append(table);
+        params.addAll(filterParams);
+        String conditions = filtered;
+        if (request.getAfter() != null)
+            conditions = and(conditions, keysetPredicate(column, request.isAsc(), request.getAfter(), params));
+        if (conditions != null)
+            sql.append(" WHERE ").append(conditions);
+        sql.append(" ORDER BY ").append(column).append(' ').append(direction);
+        if (!"id".equals(column))
+            sql.append(", id ").append(direction);
+        sql.append(" LIMIT ?");
+        // jeden wiersz więcej mówi nam, czy istnieje kolejna strona
+        params.add(request.getSize() + 1);
+
+        try (Connection connection = getReadConnection(); PreparedStatement ps = prepare(connection, sql.toString())) {
+            for (int i = 0; i < params.size(); i++)
+                ps.setObject(i + 1, params.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper<R> rowMapper = mapper.prepare(sql.toString(), rs);
+                List<R> content = new ArrayList<>(request.getSize());
+                Keyset last = null;
+                boolean more = false;
+                long total = Page.UNKNOWN_TOTAL;
+                while (rs.next()) {
+                    if (content.size() == request.getSize()) {
+                        more = true;
+                        break;
+                    }
+                    if (total == Page.UNKNOWN_TOTAL && request.isWithTotal())
+                        total = rs.getLong(TOTAL_COLUMN);
+                    content.add(rowMapper.map(rs));
+                    if (content.size() == request.getSize())
+                        last = new Keyset(rs.getObject(column), rs.getObject("id"));
+                }
+                if (total == Page.UNKNOWN_TOTAL && request.isWithTotal())
+                    total = emptyPageTotal(connection, countSql, filterParams, request);
+                return new Page<>(content, more ? last : null, total);
+            }
+        }
+    }
+
+    // pusta strona nie niesie wiersza z totalem: pierwsza strona jest po prostu pusta,
+    // dalsza (kursor za końcem, np. po usunięciu rekordów) wymaga osobnego COUNT
+    private long emptyPageTotal(Connection connection, String countSql, List<Object> params, PageRequest request)
+            throws SQLException {
+        if (request.getAfter() == null)
+            return 0;
+        try (PreparedStatement ps = prepare(connection, countSql)) {
+            for (int i = 0; i < params.size(); i++)
+                ps.setObject(i + 1, params.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /** Łączy dwa warunki przez AND; null oznacza brak warunku */
+    private static String and(String left, String right) {
+        if (left == null)
+            return right;
+        return right == null ? left : left + " AND " + right;
+    }
+
+    /**
+     * Przechodzi po wyniku zapytania wiersz po wierszu (kursor serwera, porcje
+     * STREAM_FETCH_SIZE) - zużycie pamięci nie zależy od liczby wierszy.
+     */
+    protected <R> void queryEach(String sql, RowMapper<R> mapper, Consumer<? super R> action) throws SQLException {
+        try (Connection connection = getReadConnection(); PreparedStatement ps = prepareStreaming(connection, sql);
+                ResultSet rs = ps.executeQuery()) {
+            RowMapper<R> rowMapper = mapper.prepare(sql, rs);
+            while (rs.next())
+                action.accept(rowMapper.map(rs));
+        }
+    }
+
+    /**
+     * Jak queryEach, ale zwraca leniwy Stream. Połączenie jest wypożyczone do
+     * czasu zamknięcia strumienia.
+     */
+    protected <R> Stream<R> queryStream(String sql, RowMapper<R> mapper) throws SQLException {
+        Connection connection = getReadConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        RowMapper<R> rowMapper;
+        try {
+            ps = prepareStreaming(connection, sql);
+            rs = ps.executeQuery();
+            rowMapper = mapper.prepare(sql, rs);
+        } catch (SQLException | RuntimeException e) {
+            closeAll(rs, ps, connection);
+            throw e;
+        }
+        ResultSet cursor = rs;
+        PreparedStatement statement = ps;
+        Spliterator<R> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                try {
+                    if (!cursor.next())
+                        return false;
+                    action.accept(rowMapper.map(cursor));
+                    return true;
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> closeAll(cursor, statement, connection));
+    }
+
+    // strumieniowe statementy nie idą do cache - trzymają kursor przez cały odczyt
+    private PreparedStatement prepareStreaming(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(STREAM_FETCH_SIZE);
+        return cancellable(ps);
+    }
+
+    private static void closeAll(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null)
+                continue;
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Strona projekcji: SELECT tylko wskazanych kolumn do RowView zamiast
+     * SELECT * i pełnych encji. Id i kolumna sortowania są dobierane do zapytania
+     * (potrzebne do kursora), ale nie trafiają do RowView, jeśli ich nie
+     * zażądano.
+     */
+    protected Page<RowView> queryRows(String table, String where, List<String> columns, PageRequest request)
+            throws SQLException {
+        if (columns == null || columns.isEmpty())
+            throw new IllegalArgumentException("At least one column is required");
+        List<String> select = new ArrayList<>(columns.size() + 2);
+        for (String c : columns) {
+            String column = c == null ? "" : c.trim().toLowerCase();
+            if (!PROJECTABLE_COLUMNS.contains(column))
+                throw new IllegalArgumentException("Unknown column: " + c);
+            select.add(column);
+        }
+        int requested = select.size();
+        boolean[] dates = new boolean[requested];
+        for (int i = 0; i < requested; i++)
+            dates[i] = DATE_COLUMNS.contains(select.get(i));
+        String sortColumn = sortColumn(request.getSortBy());
+        if (!select.contains("id"))
+            select.add("id");
+        if (!select.contains(sortColumn))
+            select.add(sortColumn);
+
+        return queryPage(String.join(", ", select), table, where, request, rs -> {
+            Object[] values = new Object[requested];
+            for (int i = 0; i < requested; i++)
+                values[i] = dates[i] ? rs.getString(i + 1) : rs.getObject(i + 1);
+            return new RowView(values);
+        });
+    }
+
+    /**
+     * Warunek "wiersz leży za kursorem" zgodny z ORDER BY col, id. MySQL
+     * sortuje NULL jako najmniejsze, stąd osobne gałęzie dla kursora z NULL.
+     */
+    private static String keysetPredicate(String column, boolean asc, Keyset after, List<Object> params) {
+        if ("id".equals(column)) {
+            params.add(after.getId());
+            return asc ? "id > ?" : "id < ?";
+        }
+        if (after.getSortValue() == null) {
+            params.add(after.getId());
+            return asc ? "((" + column + " IS NULL AND id > ?) OR " + column + " IS NOT NULL)"
+                    : "(" + column + " IS NULL AND id < ?)";
+        }
+        params.add(after.getSortValue());
+        params.add(after.getId());
+        return asc ? "(" + column + ", id) > (?, ?)"
+                : "((" + column + ", id) < (?, ?) OR " + column + " IS NULL)";
+    }
+}
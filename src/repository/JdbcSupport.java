@@ -0,0 +1,202 @@
+package repository;
+
+import jdbc.PooledConnection;
+import jdbc.RoutingDataSource;
+import jdbc.dialect.SqlDialect;
+import utils.concurrent.Cancellation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/**
+ * Wspólna baza dla repozytoriów JDBC. Trzyma DataSource (pulę połączeń) -
+ * każda operacja wypożycza połączenie na czas swojego trwania i oddaje je
+ * zamykając (try-with-resources).
+ */
+public abstract class JdbcSupport {
+	/** Maksymalna liczba prepared statementów trzymanych per fizyczne połączenie */
+	private static final int STATEMENT_CACHE_SIZE = 64;
+
+	protected final DataSource dataSource;
+
+	// rozpoznany przy pierwszym użyciu z metadanych połączenia
+	private volatile SqlDialect dialect;
+
+	protected JdbcSupport(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/** Dialekt bazy za dataSource - do SQL, który nie jest wspólny dla wszystkich baz */
+	protected SqlDialect dialect() throws SQLException {
+		SqlDialect d = dialect;
+		if (d == null) {
+			try (Connection connection = getConnection()) {
+				d = dialect(connection);
+			}
+		}
+		return d;
+	}
+
+	/** Jak {@link #dialect()}, ale rozpoznaje dialekt na już trzymanym połączeniu zamiast wypożyczać nowe */
+	protected SqlDialect dialect(Connection connection) throws SQLException {
+		SqlDialect d = dialect;
+		if (d == null)
+			dialect = d = SqlDialect.of(connection);
+		return d;
+	}
+
+	/**
+	 * Wypożycza połączenie na czas jednej operacji. Wywołujący musi je zamknąć.
+	 * W {@link TransactionTemplate} zwraca połączenie bieżącej transakcji
+	 * (close() go wtedy nie oddaje).
+	 */
+	protected Connection getConnection() throws SQLException {
+		Connection bound = TransactionTemplate.current(dataSource);
+		return bound != null ? bound : dataSource.getConnection();
+	}
+
+	/**
+	 * Połączenie dla zapisu. Za {@link RoutingDataSource} otwiera okno
+	 * read-your-writes (kolejne odczyty idą na primary), poza tym działa jak
+	 * {@link #getConnection()}.
+	 */
+	protected Connection getWriteConnection() throws SQLException {
+		Connection bound = TransactionTemplate.current(dataSource);
+		if (bound != null)
+			return bound;
+		return dataSource instanceof RoutingDataSource routing ? routing.getWriteConnection()
+				: dataSource.getConnection();
+	}
+
+	/**
+	 * Połączenie dla operacji tylko do odczytu. Za {@link RoutingDataSource}
+	 * trafia na replikę (poza transakcją i oknem read-your-writes), poza tym
+	 * działa jak {@link #getConnection()}.
+	 */
+	protected Connection getReadConnection() throws SQLException {
+		Connection bound = TransactionTemplate.current(dataSource);
+		if (bound != null)
+			return bound;
+		return dataSource instanceof RoutingDataSource routing ? routing.getReadConnection()
+				: dataSource.getConnection();
+	}
+
+	/** Praca wykonywana na jednym połączeniu */
+	@FunctionalInterface
+	protected interface ConnectionCallback<R> {
+		R doInConnection(Connection connection) throws SQLException;
+	}
+
+	/**
+	 * Wykonuje pracę w jednej transakcji na jednym wypożyczonym połączeniu -
+	 * commit na końcu, rollback przy błędzie. W trwającej transakcji
+	 * {@link TransactionTemplate} dołącza do niej.
+	 */
+	protected <R> R inTransaction(ConnectionCallback<R> work) throws SQLException {
+		try {
+			return new TransactionTemplate(dataSource).execute(() -> {
+				try (Connection connection = getConnection()) {
+					return work.doInConnection(connection);
+				}
+			});
+		} catch (SQLException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SQLException(e); // callback rzuca tylko SQLException
+		}
+	}
+
+	protected PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+		return prepare(connection, sql, false);
+	}
+
+	/**
+	 * Przygotowuje statement, korzystając z cache przypiętego do fizycznego
+	 * połączenia z puli. Wynik zawsze zamykamy (try-with-resources) - dla
+	 * statementu z cache close() jedynie oddaje go do ponownego użycia.
+	 */
+	protected PreparedStatement prepare(Connection connection, String sql, boolean returnGeneratedKeys)
+			throws SQLException {
+		if (connection instanceof PooledConnection pooled) {
+			StatementCache cache = pooled.getAttachment(StatementCache.class,
+					() -> new StatementCache(STATEMENT_CACHE_SIZE));
+			return cancellable(cache.prepare(connection, sql, returnGeneratedKeys));
+		}
+		return cancellable(returnGeneratedKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+				: connection.prepareStatement(sql));
+	}
+
+	/**
+	 * W zadaniu z {@link Cancellation#supplyAsync} ustawia timeout zadania i
+	 * wiąże statement z jego anulowaniem: cancel() future przerywa trwające
+	 * zapytanie (Statement.cancel()), a kolejne execute kończy się od razu
+	 * błędem. Poza takim zadaniem zeruje timeout (statement z cache mógł go
+	 * mieć z poprzedniego użycia).
+	 */
+	protected PreparedStatement cancellable(PreparedStatement ps) throws SQLException {
+		Cancellation scope = Cancellation.current();
+		if (scope == null) {
+			ps.setQueryTimeout(0);
+			return ps;
+		}
+		ps.setQueryTimeout(scope.getQueryTimeoutSeconds());
+		CancellableStatement handler = new CancellableStatement(ps, scope);
+		scope.onCancel(handler.cancelAction);
+		return (PreparedStatement) Proxy.newProxyInstance(JdbcSupport.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, handler);
+	}
+
+	/**
+	 * Statement zadania anulowalnego. cancel i close są wzajemnie wykluczające
+	 * się - po close statement (z cache) może już wykonywać zapytanie innego
+	 * wątku, którego spóźnione anulowanie nie może przerwać.
+	 */
+	private static final class CancellableStatement implements InvocationHandler {
+		private final PreparedStatement delegate;
+		private final Cancellation scope;
+		private final Runnable cancelAction = this::cancel;
+		private boolean closed;
+
+		private CancellableStatement(PreparedStatement delegate, Cancellation scope) {
+			this.delegate = delegate;
+			this.scope = scope;
+		}
+
+		private synchronized void cancel() {
+			if (closed)
+				return;
+			try {
+				delegate.cancel();
+			} catch (SQLException ignored) {
+				// zapytanie i tak skończy się timeoutem
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("close".equals(name)) {
+				synchronized (this) {
+					closed = true;
+				}
+				scope.remove(cancelAction);
+			} else if (name.startsWith("execute") && scope.isCancelled()) {
+				// HY008 - operation canceled
+				throw new SQLException("Query cancelled", "HY008");
+			}
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package repository;
+
+/**
+ * Kursor paginacji keyset (seek): wartość kolumny sortowania i id ostatniego
+ * wiersza poprzedniej strony. Kolejna strona zaczyna się od wierszy "za"
+ * kursorem, więc baza nie musi skanować i odrzucać wierszy jak przy OFFSET.
+ */
+public final class Keyset {
+	private final Object sortValue;
+	private final Object id;
+
+	public Keyset(Object sortValue, Object id) {
+		this.sortValue = sortValue;
+		this.id = id;
+	}
+
+	public Object getSortValue() {
+		return sortValue;
+	}
+
+	public Object getId() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return "Keyset{sortValue=" + sortValue + ", id=" + id + '}';
+	}
+}
@@ -0,0 +1,29 @@
+package repository;
+
+/**
+ * Rekord został w międzyczasie zmieniony (lub usunięty) przez innego klienta
+ * - wersja w bazie nie zgadza się z wersją, którą edytował wywołujący.
+ * Właściwa reakcja to ponowny odczyt i powtórzenie edycji.
+ */
+public class OptimisticLockException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Object id;
+	private final int expectedVersion;
+
+	public OptimisticLockException(String entity, Object id, int expectedVersion) {
+		super(entity + " id=" + id + " was modified or deleted concurrently (expected version " + expectedVersion
+				+ ")");
+		this.id = id;
+		this.expectedVersion = expectedVersion;
+	}
+
+	public Object getId() {
+		return id;
+	}
+
+	public int getExpectedVersion() {
+		return expectedVersion;
+	}
+}
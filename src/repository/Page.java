@@ -0,0 +1,48 @@
+package repository;
+
+import java.util.List;
+
+/**
+ * Strona wyników paginacji keyset wraz z kursorem do strony następnej i
+ * (opcjonalnie) łączną liczbą rekordów.
+ */
+public final class Page<T> {
+	/** Wartość total, gdy liczba rekordów nie była liczona */
+	public static final long UNKNOWN_TOTAL = -1;
+
+	private final List<T> content;
+	private final Keyset next;
+	private final long total;
+
+	public Page(List<T> content, Keyset next) {
+		this(content, next, UNKNOWN_TOTAL);
+	}
+
+	public Page(List<T> content, Keyset next, long total) {
+		this.content = content;
+		this.next = next;
+		this.total = total;
+	}
+
+	public List<T> getContent() {
+		return content;
+	}
+
+	/** Kursor następnej strony lub null, jeśli to ostatnia strona */
+	public Keyset getNext() {
+		return next;
+	}
+
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	/** Łączna liczba rekordów (wszystkich stron) lub UNKNOWN_TOTAL */
+	public long getTotal() {
+		return total;
+	}
+
+	public boolean hasTotal() {
+		return total != UNKNOWN_TOTAL;
+	}
+}
@@ -0,0 +1,82 @@
+package repository;
+
+/**
+ * Parametry pobrania strony w paginacji keyset. Niemutowalne - metody
+ * {@code after(...)} zwracają nową instancję.
+ */
+public final class PageRequest {
+	private final int size;
+	private final String sortBy;
+	private final boolean asc;
+	private final Keyset after;
+	private final boolean withTotal;
+	private final Specification filter;
+
+	private PageRequest(int size, String sortBy, boolean asc, Keyset after, boolean withTotal,
+			Specification filter) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Page size must be positive");
+		this.size = size;
+		this.sortBy = sortBy;
+		this.asc = asc;
+		this.after = after;
+		this.withTotal = withTotal;
+		this.filter = filter == null ? Specification.all() : filter;
+	}
+
+	/** Pierwsza strona dla danego sortowania */
+	public static PageRequest first(int size, String sortBy, boolean asc) {
+		return new PageRequest(size, sortBy, asc, null, false, null);
+	}
+
+	/**
+	 * Żądanie z filtrem. Kursory z innego filtra nie mają sensu - wywołujący
+	 * zaczyna wtedy od pierwszej strony.
+	 */
+	public PageRequest filter(Specification spec) {
+		return new PageRequest(size, sortBy, asc, after, withTotal, spec);
+	}
+
+	/** Strona zaczynająca się za podanym kursorem (null = pierwsza strona) */
+	public PageRequest after(Keyset cursor) {
+		return new PageRequest(size, sortBy, asc, cursor, withTotal, filter);
+	}
+
+	/**
+	 * Żądanie z łączną liczbą rekordów - liczona w tym samym zapytaniu co
+	 * strona (jeden round trip zamiast osobnego count()).
+	 */
+	public PageRequest withTotal() {
+		return withTotal ? this : new PageRequest(size, sortBy, asc, after, true, filter);
+	}
+
+	/** Żądanie bez liczenia totalu (np. gdy wywołujący zna go z cache) */
+	public PageRequest withoutTotal() {
+		return withTotal ? new PageRequest(size, sortBy, asc, after, false, filter) : this;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public String getSortBy() {
+		return sortBy;
+	}
+
+	public boolean isAsc() {
+		return asc;
+	}
+
+	public Keyset getAfter() {
+		return after;
+	}
+
+	public boolean isWithTotal() {
+		return withTotal;
+	}
+
+	/** Filtr (nigdy null - brak filtra to Specification.all()) */
+	public Specification getFilter() {
+		return filter;
+	}
+}
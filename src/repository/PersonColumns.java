@@ -0,0 +1,45 @@
+package repository;
+
+import model.Employee;
+import model.Person;
+import model.Student;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mapowanie właściwości encji Person (i podtypów) na kolumny tabeli persons -
+ * używane do budowy częściowego UPDATE z listy zmienionych pól.
+ */
+final class PersonColumns {
+
+	private PersonColumns() {
+	}
+
+	/** Kolumna -> wartość JDBC dla wszystkich zmienionych właściwości encji */
+	static Map<String, Object> dirtyValues(Person person) {
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (String field : person.getDirtyFields()) {
+			switch (field) {
+			case "name" -> values.put("name", person.getName());
+			case "surname" -> values.put("surname", person.getSurname());
+			case "age" -> values.put("age", person.getAge());
+			case "dateOfBirth" -> values.put("date_of_birth", toDate(person.getDateOfBirth()));
+			case "startDate" -> values.put("start_date", toDate(person.getStartDate()));
+			case "externalId" -> values.put("external_id", person.getExternalId());
+			case "salary" -> values.put("salary", ((Employee) person).getSalary());
+			case "position" -> values.put("position", ((Employee) person).getPosition());
+			case "university" -> values.put("university", ((Student) person).getUniversity());
+			case "year" -> values.put("year", ((Student) person).getYear());
+			default -> throw new IllegalStateException("Unmapped property: " + field);
+			}
+		}
+		return values;
+	}
+
+	private static Date toDate(LocalDate date) {
+		return date == null ? null : Date.valueOf(date);
+	}
+}
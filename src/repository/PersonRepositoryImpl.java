@@ -2,139 +2,235 @@ package repository;
 
 import model.Person;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Prosta implementacja JDBC dla Person z podstawowymi operacjami. Zakładamy
  * tabelę `persons` zgodnie z przykładem: id INT AUTO_INCREMENT PRIMARY KEY,
- * name, surname, age, salary, university
+ * name, surname, age, salary, university. Odczyty obejmują wszystkie rodzaje
+ * (kolumna kind), zapis tworzy wiersz kind = 'PERSON'.
  */
 public class PersonRepositoryImpl extends JdbcRepository<Person, Integer> implements PersonRepository {
 
-	public PersonRepositoryImpl(Connection connection) {
-		super(connection);
+	private static final String INSERT_SQL = "INSERT INTO persons (kind, name, surname, age, date_of_birth, start_date, external_id) VALUES ('PERSON', ?, ?, ?, ?, ?, ?)";
+	private static final String UPDATE_SQL = "UPDATE persons SET name = ?, surname = ?, age = ?, date_of_birth = ?, start_date = ?, external_id = ?, version = version + 1 WHERE id = ? AND version = ?";
+	private static final String DELETE_SQL = "DELETE FROM persons WHERE id = ?";
+	// upsert po kluczu (kind, external_id) - składnia zależy od dialektu
+	private static final List<String> UPSERT_KEY = List.of("kind", "external_id");
+	private static final List<String> UPSERT_COLUMNS = List.of("name", "surname", "age", "date_of_birth", "start_date");
+
+	// mapowanie po indeksach rozwiązanych raz per SQL (bez mapowania pola salary/university do konkretnych podtypów)
+	static final CompiledRowMapper<Person> ROW_MAPPER = new CompiledRowMapper<>("id", "name", "surname", "age",
+			"date_of_birth", "start_date", "version", "external_id") {
+		@Override
+		protected Person map(ResultSet rs, int[] c) throws SQLException {
+			Person person = new Person(rs.getInt(c[0]), rs.getString(c[1]), rs.getString(c[2]), rs.getInt(c[3]),
+					getLocalDate(rs, c[4]), getLocalDate(rs, c[5])) {
+			};
+			person.setVersion(getInt(rs, c[6]));
+			person.setExternalId(getString(rs, c[7]));
+			person.markClean();
+			return person;
+		}
+	};
+
+	public PersonRepositoryImpl(DataSource dataSource) {
+		super(dataSource);
 	}
 
 	@Override
 	public Person save(Person entity) throws SQLException {
-		String sql = "INSERT INTO persons (name, surname, age, date_of_birth, start_date) VALUES (?, ?, ?, ?, ?)";
-		try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-			ps.setString(1, entity.getName());
-			ps.setString(2, entity.getSurname());
-			if (entity.getAge() != null)
-				ps.setInt(3, entity.getAge());
-			else
-				ps.setNull(3, Types.INTEGER);
-			if (entity.getDateOfBirth() != null)
-				ps.setDate(4, Date.valueOf(entity.getDateOfBirth()));
-			else
-				ps.setNull(4, Types.DATE);
-			if (entity.getStartDate() != null)
-				ps.setDate(5, Date.valueOf(entity.getStartDate()));
-			else
-				ps.setNull(5, Types.DATE);
-
-			ps.executeUpdate();
-			try (ResultSet rs = ps.getGeneratedKeys()) {
-				if (rs.next())
-					entity.setId(rs.getInt(1));
-			}
-			return entity;
-		}
+		return insert(INSERT_SQL, entity, this::bindInsert, this::saved);
 	}
 
 	@Override
 	public Optional<Person> findById(Integer id) throws SQLException {
 		String sql = "SELECT * FROM persons WHERE id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+		try (Connection connection = getReadConnection(); PreparedStatement ps = prepare(connection, sql)) {
 			ps.setInt(1, id);
 			try (ResultSet rs = ps.executeQuery()) {
 				if (rs.next())
-					return Optional.of(mapRowToPerson(rs));
+					return Optional.of(ROW_MAPPER.prepare(sql, rs).map(rs));
 			}
 		}
 		return Optional.empty();
 	}
 
+	@Override
+	public List<Person> findAllById(Collection<Integer> ids) throws SQLException {
+		return queryByIds("persons", null, ids, ROW_MAPPER, Person::getId);
+	}
+
 	@Override
 	public List<Person> findAll() throws SQLException {
 		String sql = "SELECT * FROM persons";
-		try (PreparedStatement ps = connection.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+		try (Connection connection = getReadConnection();
+				PreparedStatement ps = prepare(connection, sql); ResultSet rs = ps.executeQuery()) {
+			RowMapper<Person> mapper = ROW_MAPPER.prepare(sql, rs);
 			List<Person> list = new ArrayList<>();
 			while (rs.next())
-				list.add(mapRowToPerson(rs));
+				list.add(mapper.map(rs));
 			return list;
 		}
 	}
 
+	@Override
+	public void forEachEntity(Consumer<? super Person> action) throws SQLException {
+		queryEach("SELECT * FROM persons", ROW_MAPPER, action);
+	}
+
+	@Override
+	public Stream<Person> streamAll() throws SQLException {
+		return queryStream("SELECT * FROM persons", ROW_MAPPER);
+	}
+
 	@Override
 	public List<Person> findAll(int page, int size, String sortBy, boolean asc) throws SQLException {
-		String order = (sortBy == null || sortBy.isBlank()) ? "id" : sortBy;
-		String direction = asc ? "ASC" : "DESC";
-		int offset = page * size;
-		String sql = String.format("SELECT * FROM persons ORDER BY %s %s LIMIT ? OFFSET ?", order, direction);
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setInt(1, size);
-			ps.setInt(2, offset);
-			try (ResultSet rs = ps.executeQuery()) {
-				List<Person> list = new ArrayList<>();
-				while (rs.next())
-					list.add(mapRowToPerson(rs));
-				return list;
-			}
-		}
+		return findAll(Specification.all(), page, size, sortBy, asc);
+	}
+
+	@Override
+	public List<Person> findAll(Specification filter, int page, int size, String sortBy, boolean asc)
+			throws SQLException {
+		return queryOffset("persons", null, filter, page, size, sortBy, asc, ROW_MAPPER);
+	}
+
+	@Override
+	public Page<Person> findPage(PageRequest request) throws SQLException {
+		return queryPage("*", "persons", null, request, ROW_MAPPER);
+	}
+
+	@Override
+	public Page<RowView> findRows(List<String> columns, PageRequest request) throws SQLException {
+		return queryRows("persons", null, columns, request);
 	}
 
 	@Override
 	public Person update(Person entity) throws SQLException {
-		String sql = "UPDATE persons SET name = ?, surname = ?, age = ?, date_of_birth = ?, start_date = ? WHERE id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setString(1, entity.getName());
-			ps.setString(2, entity.getSurname());
-			if (entity.getAge() != null)
-				ps.setInt(3, entity.getAge());
-			else
-				ps.setNull(3, Types.INTEGER);
-			if (entity.getDateOfBirth() != null)
-				ps.setDate(4, Date.valueOf(entity.getDateOfBirth()));
-			else
-				ps.setNull(4, Types.DATE);
-			if (entity.getStartDate() != null)
-				ps.setDate(5, Date.valueOf(entity.getStartDate()));
-			else
-				ps.setNull(5, Types.DATE);
-			ps.setInt(6, entity.getId());
-			ps.executeUpdate();
+		if (entity.isTracked()) {
+			// encja odczytana z bazy: tylko zmienione kolumny, a bez zmian - bez UPDATE
+			if (entity.isDirty()) {
+				if (updateColumns("persons", null, entity.getId(), entity.getVersion(),
+						PersonColumns.dirtyValues(entity)) == 0)
+					throw conflict(entity);
+				entity.setVersion(entity.getVersion() + 1);
+			}
+			entity.markClean();
+			return entity;
+		}
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, UPDATE_SQL)) {
+			bindUpdate(ps, entity);
+			if (ps.executeUpdate() == 0)
+				throw conflict(entity);
+			entity.setVersion(entity.getVersion() + 1);
+			entity.markClean();
 			return entity;
 		}
 	}
 
 	@Override
 	public boolean deleteById(Integer id) throws SQLException {
-		String sql = "DELETE FROM persons WHERE id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, DELETE_SQL)) {
 			ps.setInt(1, id);
 			return ps.executeUpdate() > 0;
 		}
 	}
 
+	@Override
+	public boolean deleteById(Integer id, int expectedVersion) throws SQLException {
+		return deleteVersioned("persons", null, "Person", id, expectedVersion);
+	}
+
+	@Override
+	public List<Person> saveAll(Collection<Person> entities) throws SQLException {
+		return batchInsert(INSERT_SQL, entities, this::bindInsert, this::saved);
+	}
+
+	@Override
+	public void upsertAll(Collection<Person> entities) throws SQLException {
+		for (Person entity : entities)
+			if (entity.getExternalId() == null || entity.getExternalId().isBlank())
+				throw new IllegalArgumentException("upsertAll requires externalId: " + entity);
+		// INSERT ... ON DUPLICATE KEY UPDATE (MERGE w H2) po (kind, external_id) - porcjami, jedna transakcja
+		batchUpsert(INSERT_SQL, UPSERT_KEY, UPSERT_COLUMNS, entities, this::bindInsert);
+	}
+
+	@Override
+	public List<Person> updateAll(Collection<Person> entities) throws SQLException {
+		List<Person> list = new ArrayList<>(entities);
+		// batch ma jeden kształt SQL (wszystkie kolumny) - pomijamy tylko encje bez zmian
+		List<Person> changed = new ArrayList<>(list.size());
+		for (Person entity : list)
+			if (!entity.isTracked() || entity.isDirty())
+				changed.add(entity);
+		batchUpdate(UPDATE_SQL, changed, this::bindUpdate, this::conflict);
+		for (Person entity : changed) {
+			entity.setVersion(entity.getVersion() + 1);
+			entity.markClean();
+		}
+		return list;
+	}
+
+	@Override
+	public int deleteAllById(Collection<Integer> ids) throws SQLException {
+		return batchUpdate(DELETE_SQL, ids, (ps, id) -> ps.setInt(1, id));
+	}
+
 	@Override
 	public long count() throws SQLException {
 		String sql = "SELECT COUNT(*) FROM persons";
-		try (PreparedStatement ps = connection.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+		try (Connection connection = getReadConnection();
+				PreparedStatement ps = prepare(connection, sql); ResultSet rs = ps.executeQuery()) {
 			return rs.next() ? rs.getLong(1) : 0L;
 		}
 	}
 
-	// Proste mapowanie do Person (bez mapowania pola salary/university do konkretnych podtypów)
-	protected Person mapRowToPerson(ResultSet rs) throws SQLException {
-		Person p = new Person(rs.getInt("id"), rs.getString("name"), rs.getString("surname"), rs.getInt("age"),
-				rs.getDate("date_of_birth") != null ? rs.getDate("date_of_birth").toLocalDate() : null,
-				rs.getDate("start_date") != null ? rs.getDate("start_date").toLocalDate() : null) {
-		};
-		return p;
+	// nowy wiersz: id z bazy albo z generatora, wersja początkowa
+	private void saved(Person entity, long id) {
+		entity.setId((int) id);
+		entity.setVersion(0);
+		entity.markClean();
+	}
+
+	// UPDATE nie zmienił wiersza: ktoś go zmienił (inna wersja) lub usunął
+	private OptimisticLockException conflict(Person entity) {
+		return new OptimisticLockException("Person", entity.getId(), entity.getVersion());
+	}
+
+	// wspólne bindowanie kolumn dla INSERT i UPDATE (parametry 1..5)
+	private void bindColumns(PreparedStatement ps, Person entity) throws SQLException {
+		ps.setString(1, entity.getName());
+		ps.setString(2, entity.getSurname());
+		if (entity.getAge() != null)
+			ps.setInt(3, entity.getAge());
+		else
+			ps.setNull(3, Types.INTEGER);
+		if (entity.getDateOfBirth() != null)
+			ps.setDate(4, Date.valueOf(entity.getDateOfBirth()));
+		else
+			ps.setNull(4, Types.DATE);
+		if (entity.getStartDate() != null)
+			ps.setDate(5, Date.valueOf(entity.getStartDate()));
+		else
+			ps.setNull(5, Types.DATE);
+	}
+
+	private void bindInsert(PreparedStatement ps, Person entity) throws SQLException {
+		bindColumns(ps, entity);
+		ps.setString(6, entity.getExternalId());
+	}
+
+	private void bindUpdate(PreparedStatement ps, Person entity) throws SQLException {
+		bindColumns(ps, entity);
+		ps.setString(6, entity.getExternalId());
+		ps.setInt(7, entity.getId());
+		ps.setInt(8, entity.getVersion());
 	}
 }
\ No newline at end of file
@@ -10,4 +10,9 @@ public interface RoleRepository {
      * Zwraca id roli - jeśli nie istnieje to tworzy ją i zwraca nowe id.
      */
     Integer findOrCreateRole(String name) throws Exception;
+
+    /**
+     * Czyści cache katalogu ról - następny odczyt pobierze role z bazy.
+     */
+    void invalidateCache();
 }
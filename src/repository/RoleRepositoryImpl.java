@@ -1,29 +1,35 @@
 package repository;
 
+import javax.sql.DataSource;
 import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Proste repozytorium ról (roles).
+ * Proste repozytorium ról (roles). Tabela jest mała i prawie niezmienna, więc
+ * cały katalog nazwa -> id trzymany jest w pamięci: ładowany jednym zapytaniem
+ * przy pierwszym odczycie, uzupełniany przy tworzeniu roli i czyszczony przez
+ * {@link #invalidateCache()}.
  */
-public class RoleRepositoryImpl implements RoleRepository {
+public class RoleRepositoryImpl extends JdbcSupport implements RoleRepository {
 
-	private final Connection connection;
+	// null = katalog nie załadowany; podmiana całej mapy przy invalidacji, odczyty bez blokad
+	private volatile Map<String, Integer> cache;
 
-	public RoleRepositoryImpl(Connection connection) {
-		this.connection = connection;
+	public RoleRepositoryImpl(DataSource dataSource) {
+		super(dataSource);
 	}
 
 	@Override
 	public Integer findIdByName(String name) throws SQLException {
-		String sql = "SELECT id FROM roles WHERE name = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setString(1, name);
-			try (ResultSet rs = ps.executeQuery()) {
-				if (rs.next())
-					return rs.getInt("id");
-			}
-		}
-		return null;
+		Integer id = catalog().get(name);
+		if (id != null)
+			return id;
+		// rola dodana poza aplikacją - pytamy bazę, brak nie jest cache'owany
+		id = queryIdByName(name);
+		if (id != null)
+			catalog().put(name, id);
+		return id;
 	}
 
 	@Override
@@ -35,15 +41,51 @@ public class RoleRepositoryImpl implements RoleRepository {
 
 		// utwórz nową rolę (zwróć id)
 		String insert = "INSERT INTO roles (name) VALUES (?)";
-		try (PreparedStatement ps = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, insert, true)) {
 			ps.setString(1, name);
 			ps.executeUpdate();
 			try (ResultSet rs = ps.getGeneratedKeys()) {
-				if (rs.next())
-					return rs.getInt(1);
+				if (rs.next()) {
+					id = rs.getInt(1);
+					catalog().put(name, id);
+					return id;
+				}
 			}
 		}
 		// jeśli tu nie zwrócono id, spróbuj jeszcze raz pobrać (konkurencja)
 		return findIdByName(name);
 	}
+
+	@Override
+	public void invalidateCache() {
+		cache = null;
+	}
+
+	private Map<String, Integer> catalog() throws SQLException {
+		Map<String, Integer> c = cache;
+		if (c != null)
+			return c;
+		// równoległe pierwsze odczyty mogą załadować katalog dwa razy - to tylko kilka wierszy
+		Map<String, Integer> loaded = new ConcurrentHashMap<>();
+		try (Connection connection = getConnection();
+				PreparedStatement ps = prepare(connection, "SELECT id, name FROM roles");
+				ResultSet rs = ps.executeQuery()) {
+			while (rs.next())
+				loaded.put(rs.getString(2), rs.getInt(1));
+		}
+		cache = loaded;
+		return loaded;
+	}
+
+	private Integer queryIdByName(String name) throws SQLException {
+		String sql = "SELECT id FROM roles WHERE name = ?";
+		try (Connection connection = getConnection(); PreparedStatement ps = prepare(connection, sql)) {
+			ps.setString(1, name);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next())
+					return rs.getInt("id");
+			}
+		}
+		return null;
+	}
 }
@@ -0,0 +1,21 @@
+package repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mapowanie bieżącego wiersza ResultSet na obiekt.
+ */
+@FunctionalInterface
+public interface RowMapper<R> {
+	R map(ResultSet rs) throws SQLException;
+
+	/**
+	 * Wywoływane raz na zapytanie, przed pierwszym wierszem. Mapper może tu
+	 * rozwiązać indeksy kolumn (patrz {@link CompiledRowMapper}); domyślnie
+	 * zwraca samego siebie.
+	 */
+	default RowMapper<R> prepare(String sql, ResultSet rs) throws SQLException {
+		return this;
+	}
+}
@@ -0,0 +1,51 @@
+package repository;
+
+import java.util.Arrays;
+
+/**
+ * Lekki widok wiersza z projekcją wybranych kolumn (zamiast pełnej encji).
+ * Wartości są w kolejności kolumn z zapytania; daty jako tekst ISO
+ * (yyyy-MM-dd), bez konwersji przez LocalDate.
+ */
+public final class RowView {
+	private final Object[] values;
+
+	/** Wartości w kolejności kolumn projekcji (tablica nie jest kopiowana) */
+	public RowView(Object[] values) {
+		this.values = values;
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public Object get(int index) {
+		return values[index];
+	}
+
+	/** Wartość liczbowa jako prymityw (0 dla NULL) */
+	public int getInt(int index) {
+		Object v = values[index];
+		return v == null ? 0 : ((Number) v).intValue();
+	}
+
+	public double getDouble(int index) {
+		Object v = values[index];
+		return v == null ? 0.0 : ((Number) v).doubleValue();
+	}
+
+	public String getString(int index) {
+		Object v = values[index];
+		return v == null ? null : v.toString();
+	}
+
+	/** Kopia wartości - np. jako wiersz modelu tabeli */
+	public Object[] toArray() {
+		return values.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "RowView" + Arrays.toString(values);
+	}
+}
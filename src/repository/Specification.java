@@ -0,0 +1,225 @@
+package repository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Filtr rekordów tabeli persons kompilowany do sparametryzowanego WHERE.
+ * Niemutowalny - każda metoda zwraca nową instancję, a null (lub pusty
+ * tekst) wyłącza dane kryterium:
+ *
+ * <pre>
+ * Specification.all().ageBetween(20, 40).positionEquals("Developer")
+ * </pre>
+ *
+ * Tekst SQL zależy tylko od tego, które kryteria są ustawione (nie od
+ * wartości), więc jest cache'owany per struktura - te same kształty trafiają
+ * też do cache prepared statementów.
+ */
+public final class Specification {
+
+	/** Kolejność = bit w masce struktury */
+	private enum Criterion {
+		AGE_MIN("age", Op.MIN), AGE_MAX("age", Op.MAX), SALARY_MIN("salary", Op.MIN), SALARY_MAX("salary", Op.MAX),
+		POSITION("position", Op.EQ), UNIVERSITY("university", Op.EQ), YEAR("year", Op.EQ),
+		NAME_PREFIX("name", Op.PREFIX), SURNAME_PREFIX("surname", Op.PREFIX);
+
+		private final String column;
+		private final Op op;
+		private final String sql;
+
+		Criterion(String column, Op op) {
+			this.column = column;
+			this.op = op;
+			this.sql = column + op.sql;
+		}
+	}
+
+	private enum Op {
+		MIN(" >= ?"), MAX(" <= ?"), EQ(" = ?"), PREFIX(" LIKE ?");
+
+		private final String sql;
+
+		Op(String sql) {
+			this.sql = sql;
+		}
+	}
+
+	private static final Criterion[] CRITERIA = Criterion.values();
+	private static final Specification ALL = new Specification(new Object[CRITERIA.length]);
+	private static final Map<Integer, String> SHAPES = new ConcurrentHashMap<>();
+
+	private final Object[] values;
+	private final int mask;
+
+	private Specification(Object[] values) {
+		this.values = values;
+		int m = 0;
+		for (int i = 0; i < values.length; i++)
+			if (values[i] != null)
+				m |= 1 << i;
+		this.mask = m;
+	}
+
+	/** Filtr bez kryteriów (wszystkie rekordy) */
+	public static Specification all() {
+		return ALL;
+	}
+
+	/** Wiek w przedziale domkniętym; null = brak ograniczenia z danej strony */
+	public Specification ageBetween(Integer min, Integer max) {
+		requireOrdered(min, max, "age");
+		return with(Criterion.AGE_MIN, min).with(Criterion.AGE_MAX, max);
+	}
+
+	/** Pensja w przedziale domkniętym; null = brak ograniczenia z danej strony */
+	public Specification salaryBetween(Double min, Double max) {
+		requireOrdered(min, max, "salary");
+		return with(Criterion.SALARY_MIN, min).with(Criterion.SALARY_MAX, max);
+	}
+
+	public Specification positionEquals(String position) {
+		return with(Criterion.POSITION, trimToNull(position));
+	}
+
+	public Specification universityEquals(String university) {
+		return with(Criterion.UNIVERSITY, trimToNull(university));
+	}
+
+	public Specification yearEquals(Integer year) {
+		return with(Criterion.YEAR, year);
+	}
+
+	/** Imię zaczynające się od prefiksu (LIKE 'x%' - może użyć indeksu) */
+	public Specification nameStartsWith(String prefix) {
+		String p = trimToNull(prefix);
+		return with(Criterion.NAME_PREFIX, p == null ? null : escapeLike(p) + "%");
+	}
+
+	/** Nazwisko zaczynające się od prefiksu (LIKE 'x%' - może użyć indeksu) */
+	public Specification surnameStartsWith(String prefix) {
+		String p = trimToNull(prefix);
+		return with(Criterion.SURNAME_PREFIX, p == null ? null : escapeLike(p) + "%");
+	}
+
+	public boolean isEmpty() {
+		return mask == 0;
+	}
+
+	/**
+	 * Warunek SQL (bez słowa WHERE) z placeholderami w kolejności
+	 * {@link #addParameters}, lub null dla pustego filtra.
+	 */
+	String toSql() {
+		if (mask == 0)
+			return null;
+		return SHAPES.computeIfAbsent(mask, Specification::compile);
+	}
+
+	/** Dopisuje wartości parametrów w kolejności placeholderów z toSql() */
+	void addParameters(List<Object> params) {
+		for (Object value : values)
+			if (value != null)
+				params.add(value);
+	}
+
+	/**
+	 * Sprawdza filtr w pamięci (bez bazy), np. dla repozytoriów in-memory.
+	 * Teksty porównywane są bez rozróżniania wielkości liter, tak jak przy
+	 * domyślnym collation MySQL; null w kolumnie nie spełnia żadnego kryterium.
+	 *
+	 * @param columns wartość kolumny tabeli persons po nazwie
+	 */
+	public boolean matches(Function<String, Object> columns) {
+		for (Criterion c : CRITERIA) {
+			Object expected = values[c.ordinal()];
+			if (expected == null)
+				continue;
+			Object actual = columns.apply(c.column);
+			if (actual == null || !test(c.op, actual, expected))
+				return false;
+		}
+		return true;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean test(Op op, Object actual, Object expected) {
+		switch (op) {
+		case PREFIX:
+			String prefix = unescapeLike((String) expected);
+			return ((String) actual).regionMatches(true, 0, prefix, 0, prefix.length());
+		case EQ:
+			return actual instanceof String a ? a.equalsIgnoreCase((String) expected) : actual.equals(expected);
+		default:
+			int cmp = ((Comparable) actual).compareTo(expected);
+			return op == Op.MIN ? cmp >= 0 : cmp <= 0;
+		}
+	}
+
+	private static String compile(int mask) {
+		StringBuilder sql = new StringBuilder();
+		for (Criterion c : CRITERIA) {
+			if ((mask & (1 << c.ordinal())) == 0)
+				continue;
+			if (sql.length() > 0)
+				sql.append(" AND ");
+			sql.append(c.sql);
+		}
+		return sql.toString();
+	}
+
+	private Specification with(Criterion criterion, Object value) {
+		if (value == null && values[criterion.ordinal()] == null)
+			return this;
+		Object[] copy = values.clone();
+		copy[criterion.ordinal()] = value;
+		return new Specification(copy);
+	}
+
+	private static <N extends Comparable<N>> void requireOrdered(N min, N max, String name) {
+		if (min != null && max != null && min.compareTo(max) > 0)
+			throw new IllegalArgumentException("Invalid " + name + " range: " + min + " > " + max);
+	}
+
+	private static String trimToNull(String s) {
+		if (s == null)
+			return null;
+		String t = s.trim();
+		return t.isEmpty() ? null : t;
+	}
+
+	// znaki specjalne LIKE traktujemy dosłownie (domyślny escape MySQL to '\')
+	private static String escapeLike(String s) {
+		return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+	}
+
+	// odwrotność escapeLike dla wzorca "prefiks%"
+	private static String unescapeLike(String pattern) {
+		StringBuilder sb = new StringBuilder(pattern.length());
+		for (int i = 0; i < pattern.length() - 1; i++) {
+			char ch = pattern.charAt(i);
+			if (ch == '\\' && i + 1 < pattern.length() - 1)
+				ch = pattern.charAt(++i);
+			sb.append(ch);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Specification other && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(values);
+	}
+
+	@Override
+	public String toString() {
+		return toSql() == null ? "Specification[all]" : "Specification[" + toSql() + "]";
+	}
+}
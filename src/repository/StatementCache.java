@@ -0,0 +1,141 @@
+package repository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache prepared statementów dla jednego fizycznego połączenia (LRU, kluczem
+ * jest tekst SQL + flaga generated keys).
+ *
+ * Zwracane statementy są opakowane - close() nie zamyka ich, tylko czyści
+ * parametry i oddaje do cache. Nie jest thread-safe: połączenie (a więc i jego
+ * cache) używa w danej chwili tylko jeden wątek.
+ */
+public final class StatementCache implements AutoCloseable {
+
+	private static final LongAdder HITS = new LongAdder();
+	private static final LongAdder MISSES = new LongAdder();
+
+	private final Map<Key, CachedStatement> statements;
+
+	StatementCache(int capacity) {
+		this.statements = new LinkedHashMap<>(capacity, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+				if (size() <= capacity)
+					return false;
+				eldest.getValue().evict();
+				return true;
+			}
+		};
+	}
+
+	/** Łączna liczba trafień we wszystkich cache (od startu aplikacji) */
+	public static long getHitCount() {
+		return HITS.sum();
+	}
+
+	/** Łączna liczba chybień (nowych prepare) we wszystkich cache */
+	public static long getMissCount() {
+		return MISSES.sum();
+	}
+
+	PreparedStatement prepare(Connection connection, String sql, boolean returnGeneratedKeys) throws SQLException {
+		Key key = new Key(sql, returnGeneratedKeys);
+		CachedStatement cached = statements.get(key);
+		if (cached != null && !cached.inUse) {
+			HITS.increment();
+			cached.inUse = true;
+			return cached.proxy;
+		}
+		MISSES.increment();
+		PreparedStatement ps = returnGeneratedKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+				: connection.prepareStatement(sql);
+		if (cached != null) {
+			// ten sam SQL jest już używany wyżej na stosie wywołań - zwykły, niecache'owany statement
+			return ps;
+		}
+		cached = new CachedStatement(ps);
+		cached.inUse = true;
+		statements.put(key, cached);
+		return cached.proxy;
+	}
+
+	@Override
+	public void close() {
+		List<CachedStatement> all = new ArrayList<>(statements.values());
+		statements.clear();
+		for (CachedStatement cached : all)
+			cached.evict();
+	}
+
+	private record Key(String sql, boolean returnGeneratedKeys) {
+	}
+
+	private static final class CachedStatement implements InvocationHandler {
+		private final PreparedStatement delegate;
+		private final PreparedStatement proxy;
+		private boolean inUse;
+		private boolean evicted;
+
+		private CachedStatement(PreparedStatement delegate) {
+			this.delegate = delegate;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		/** Usunięty z cache: zamykamy od razu albo przy zwrocie, jeśli ktoś go jeszcze używa */
+		private void evict() {
+			evicted = true;
+			if (!inUse)
+				closeQuietly();
+		}
+
+		private void closeQuietly() {
+			try {
+				delegate.close();
+			} catch (SQLException ignored) {
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (inUse) {
+					inUse = false;
+					if (evicted) {
+						closeQuietly();
+					} else {
+						delegate.clearParameters();
+						delegate.clearBatch();
+					}
+				}
+				return null;
+			case "isClosed":
+				return !inUse || delegate.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				try {
+					return method.invoke(delegate, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
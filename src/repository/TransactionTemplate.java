@@ -0,0 +1,108 @@
+package repository;
+
+import jdbc.PooledConnection;
+import jdbc.RoutingDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * Transakcja obejmująca wiele wywołań repozytoriów (unit of work). Na czas
+ * {@link #execute} połączenie wypożyczone z puli jest przypięte do wątku -
+ * każde repozytorium JDBC na tym samym DataSource dostaje je z
+ * getConnection(), więc wszystkie zapisy kończą się jednym commitem.
+ *
+ * Zagnieżdżone execute (i inTransaction repozytoriów) dołączają do bieżącej
+ * transakcji; commit/rollback wykonuje tylko najbardziej zewnętrzne wywołanie.
+ * Transakcja jest związana z wątkiem - praca zlecona na inny wątek (np.
+ * CompletableFuture.supplyAsync) do niej nie należy.
+ */
+public final class TransactionTemplate {
+
+	/** Praca wykonywana w transakcji */
+	@FunctionalInterface
+	public interface TransactionCallback<R> {
+		R doInTransaction() throws Exception;
+	}
+
+	private static final ThreadLocal<Map<DataSource, Connection>> BOUND = ThreadLocal.withInitial(HashMap::new);
+
+	private final DataSource dataSource;
+
+	public TransactionTemplate(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/** Wykonuje pracę w transakcji: commit na końcu, rollback przy dowolnym wyjątku */
+	public <R> R execute(TransactionCallback<R> work) throws Exception {
+		Map<DataSource, Connection> bound = BOUND.get();
+		if (bound.containsKey(dataSource))
+			return work.doInTransaction();
+		// transakcja to zapis - za RoutingDataSource otwiera okno read-your-writes
+		try (Connection connection = dataSource instanceof RoutingDataSource routing ? routing.getWriteConnection()
+				: dataSource.getConnection()) {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			bound.put(dataSource, connection);
+			try {
+				R result = work.doInTransaction();
+				connection.commit();
+				return result;
+			} catch (Exception | Error e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				bound.remove(dataSource);
+				if (bound.isEmpty())
+					BOUND.remove();
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+
+	/** Czy bieżący wątek jest w transakcji na tym DataSource */
+	public static boolean isActive(DataSource dataSource) {
+		return current(dataSource) != null;
+	}
+
+	/**
+	 * Połączenie bieżącej transakcji albo null poza transakcją. Zwracane
+	 * połączenie ignoruje close() i granice transakcji (commit, rollback,
+	 * setAutoCommit) - należą one do execute, a błąd i tak do niego dotrze.
+	 */
+	static Connection current(DataSource dataSource) {
+		Map<DataSource, Connection> bound = BOUND.get();
+		Connection connection = bound.get(dataSource);
+		if (connection == null) {
+			BOUND.remove();
+			return null;
+		}
+		InvocationHandler handler = (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "close", "setAutoCommit":
+				return null;
+			case "commit", "rollback":
+				if (args == null) // rollback(Savepoint) przechodzi dalej
+					return null;
+				break;
+			default:
+				break;
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		};
+		// połączenie z puli zostaje PooledConnection - cache statementów działa dalej
+		Class<?> type = connection instanceof PooledConnection ? PooledConnection.class : Connection.class;
+		return (Connection) Proxy.newProxyInstance(TransactionTemplate.class.getClassLoader(), new Class<?>[] { type },
+				handler);
+	}
+}
@@ -2,6 +2,7 @@ package repository;
 
 import model.User;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface UserRepository {
@@ -10,4 +11,7 @@ public interface UserRepository {
 	Optional<User> findByUsername(String username) throws Exception;
 	boolean deleteById(Integer id) throws Exception;
 	void assignRole(Integer userId, Integer roleId) throws Exception;
+	void assignRoles(Integer userId, Collection<Integer> roleIds) throws Exception; // jeden batch INSERT
+	void updatePasswordByUsername(String username, byte[] passwordHash, byte[] salt, boolean mustChange)
+			throws Exception;
 }
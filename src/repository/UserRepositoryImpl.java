@@ -3,100 +3,116 @@ package repository;
 import model.Role;
 import model.User;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
-public class UserRepositoryImpl {
-	private final Connection connection;
+public class UserRepositoryImpl extends JdbcSupport implements UserRepository {
 
-	public UserRepositoryImpl(Connection connection) {
-		this.connection = connection;
+	// must_change_password może nie istnieć w starszych bazach - brak kolumny (indeks 0) = false
+	private static final CompiledRowMapper<User> ROW_MAPPER = new CompiledRowMapper<>("id", "username",
+			"password_hash", "salt", "enabled", "must_change_password", "created_at", "updated_at") {
+		@Override
+		protected User map(ResultSet rs, int[] c) throws SQLException {
+			User u = new User();
+			u.setId(rs.getInt(c[0]));
+			u.setUsername(rs.getString(c[1]));
+			u.setPasswordHash(rs.getBytes(c[2]));
+			u.setSalt(rs.getBytes(c[3]));
+			u.setEnabled(rs.getBoolean(c[4]));
+			u.setMustChangePassword(getBoolean(rs, c[5]));
+			u.setCreatedAt(getLocalDate(rs, c[6]));
+			u.setUpdatedAt(getLocalDate(rs, c[7]));
+			return u;
+		}
+	};
+
+	public UserRepositoryImpl(DataSource dataSource) {
+		super(dataSource);
 	}
 
+	@Override
 	public User save(User user) throws SQLException {
 		String sql = "INSERT INTO users (username, password_hash, salt, enabled, must_change_password, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
-		try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-			ps.setString(1, user.getUsername());
-			ps.setBytes(2, user.getPasswordHash());
-			ps.setBytes(3, user.getSalt());
-			ps.setBoolean(4, user.isEnabled());
-			ps.setBoolean(5, user.isMustChangePassword()); // <-- must_change_password
-			ps.setDate(6,
-					user.getCreatedAt() == null ? Date.valueOf(LocalDate.now()) : Date.valueOf(user.getCreatedAt()));
-			ps.setDate(7,
-					user.getUpdatedAt() == null ? Date.valueOf(LocalDate.now()) : Date.valueOf(user.getUpdatedAt()));
-			ps.executeUpdate();
-			try (ResultSet rs = ps.getGeneratedKeys()) {
-				if (rs.next())
-					user.setId(rs.getInt(1));
+		// użytkownik i jego role w jednej transakcji na jednym połączeniu
+		return inTransaction(connection -> {
+			try (PreparedStatement ps = prepare(connection, sql, true)) {
+				ps.setString(1, user.getUsername());
+				ps.setBytes(2, user.getPasswordHash());
+				ps.setBytes(3, user.getSalt());
+				ps.setBoolean(4, user.isEnabled());
+				ps.setBoolean(5, user.isMustChangePassword()); // <-- must_change_password
+				ps.setDate(6, user.getCreatedAt() == null ? Date.valueOf(LocalDate.now())
+						: Date.valueOf(user.getCreatedAt()));
+				ps.setDate(7, user.getUpdatedAt() == null ? Date.valueOf(LocalDate.now())
+						: Date.valueOf(user.getUpdatedAt()));
+				ps.executeUpdate();
+				try (ResultSet rs = ps.getGeneratedKeys()) {
+					if (rs.next())
+						user.setId(rs.getInt(1));
+				}
 			}
-		}
 
-		// assign roles if any
-		if (user.getRoles() != null) {
-			for (Role r : user.getRoles()) {
-				assignRole(user.getId(), r.getId());
+			// assign roles if any
+			if (user.getRoles() != null && !user.getRoles().isEmpty()) {
+				List<Integer> roleIds = new ArrayList<>(user.getRoles().size());
+				for (Role r : user.getRoles())
+					roleIds.add(r.getId());
+				insertRoleLinks(connection, user.getId(), roleIds);
 			}
-		}
-		return user;
+			return user;
+		});
 	}
 
+	@Override
+	public Optional<User> findById(Integer id) throws SQLException {
+		return findOne("u.id = ?", id);
+	}
+
+	@Override
 	public Optional<User> findByUsername(String username) throws SQLException {
-		String sql = "SELECT * FROM users WHERE username = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setString(1, username);
-			try (ResultSet rs = ps.executeQuery()) {
-				if (rs.next()) {
-					User u = mapRow(rs);
-					u.setRoles(loadRoles(u.getId()));
-					return Optional.of(u);
-				}
-			}
-		}
-		return Optional.empty();
+		return findOne("u.username = ?", username);
 	}
 
-	private Set<Role> loadRoles(int userId) throws SQLException {
-		String sql = "SELECT r.id, r.name FROM roles r JOIN user_roles ur ON r.id = ur.role_id WHERE ur.user_id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setInt(1, userId);
+	/**
+	 * Użytkownik razem z rolami w jednym zapytaniu (LEFT JOIN - wiersz na rolę,
+	 * kolumny użytkownika powtarzają się i są mapowane tylko z pierwszego).
+	 */
+	private Optional<User> findOne(String condition, Object param) throws SQLException {
+		String sql = "SELECT u.*, r.id AS role_id, r.name AS role_name FROM users u"
+				+ " LEFT JOIN user_roles ur ON ur.user_id = u.id LEFT JOIN roles r ON r.id = ur.role_id WHERE "
+				+ condition;
+		try (Connection connection = getConnection(); PreparedStatement ps = prepare(connection, sql)) {
+			ps.setObject(1, param);
 			try (ResultSet rs = ps.executeQuery()) {
+				if (!rs.next())
+					return Optional.empty();
+				User u = ROW_MAPPER.prepare(sql, rs).map(rs);
+				int roleId = rs.findColumn("role_id");
+				int roleName = rs.findColumn("role_name");
 				Set<Role> roles = new HashSet<>();
-				while (rs.next())
-					roles.add(new Role(rs.getInt("id"), rs.getString("name")));
-				return roles;
+				do {
+					int id = rs.getInt(roleId);
+					if (!rs.wasNull())
+						roles.add(new Role(id, rs.getString(roleName)));
+				} while (rs.next());
+				u.setRoles(roles);
+				return Optional.of(u);
 			}
 		}
 	}
 
-	private User mapRow(ResultSet rs) throws SQLException {
-		User u = new User();
-		u.setId(rs.getInt("id"));
-		u.setUsername(rs.getString("username"));
-		u.setPasswordHash(rs.getBytes("password_hash"));
-		u.setSalt(rs.getBytes("salt"));
-		u.setEnabled(rs.getBoolean("enabled"));
-		try {
-			u.setMustChangePassword(rs.getBoolean("must_change_password"));
-		} catch (SQLException ex) {
-			u.setMustChangePassword(false);
-		}
-		Date ca = rs.getDate("created_at");
-		if (ca != null)
-			u.setCreatedAt(ca.toLocalDate());
-		Date ua = rs.getDate("updated_at");
-		if (ua != null)
-			u.setUpdatedAt(ua.toLocalDate());
-		return u;
-	}
-
+	@Override
 	public void updatePasswordByUsername(String username, byte[] passwordHash, byte[] salt, boolean mustChange)
 			throws SQLException {
 		String sql = "UPDATE users SET password_hash = ?, salt = ?, must_change_password = ?, updated_at = ? WHERE username = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, sql)) {
 			ps.setBytes(1, passwordHash);
 			ps.setBytes(2, salt);
 			ps.setBoolean(3, mustChange);
@@ -121,18 +137,38 @@ public class UserRepositoryImpl {
 		}
 	}
 
+	@Override
 	public void assignRole(Integer userId, Integer roleId) throws SQLException {
-		String sql = "INSERT IGNORE INTO user_roles (user_id, role_id) VALUES (?, ?)";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setInt(1, userId);
-			ps.setInt(2, roleId);
-			ps.executeUpdate();
+		assignRoles(userId, List.of(roleId));
+	}
+
+	@Override
+	public void assignRoles(Integer userId, Collection<Integer> roleIds) throws SQLException {
+		if (roleIds.isEmpty())
+			return;
+		try (Connection connection = getWriteConnection()) {
+			insertRoleLinks(connection, userId, roleIds);
+		}
+	}
+
+	// jeden batch - w MySQL przy rewriteBatchedStatements=true jeden INSERT z wieloma VALUES
+	private void insertRoleLinks(Connection connection, int userId, Collection<Integer> roleIds) throws SQLException {
+		String sql = dialect().insertIgnore("INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)",
+				List.of("user_id", "role_id"));
+		try (PreparedStatement ps = prepare(connection, sql)) {
+			for (Integer roleId : roleIds) {
+				ps.setInt(1, userId);
+				ps.setInt(2, roleId);
+				ps.addBatch();
+			}
+			ps.executeBatch();
 		}
 	}
 
+	@Override
 	public boolean deleteById(Integer id) throws SQLException {
 		String sql = "DELETE FROM users WHERE id = ?";
-		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+		try (Connection connection = getWriteConnection(); PreparedStatement ps = prepare(connection, sql)) {
 			ps.setInt(1, id);
 			return ps.executeUpdate() > 0;
 		}
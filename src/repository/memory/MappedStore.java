@@ -0,0 +1,949 @@
+package repository.memory;
+
+import repository.Keyset;
+import repository.Specification;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Tabela persons w plikach mapowanych do pamięci, kolumnowo: każda kolumna to
+ * osobny plik z wartościami stałej szerokości (int, double, dzień epoki dla
+ * dat). Wiersz o id n leży w slocie n - 1 każdej kolumny. Teksty o wielu
+ * różnych wartościach (name, surname, external_id) leżą w pliku strings.dat,
+ * a kolumna trzyma ich przesunięcie i długość. Tylko position i university
+ * (kilkadziesiąt wartości) są kodowane słownikiem trzymanym na stercie.
+ * Unikalny klucz (kind, external_id) to tablica mieszająca w pliku
+ * external_id.idx (adresowanie otwarte, wpis = id wiersza).
+ *
+ * Dane są poza stertą (page cache systemu), więc skany nie tworzą obiektów
+ * poza zwracanymi wierszami, a ponowne otwarcie katalogu wczytuje tylko
+ * słownik position/university i przegląda kolumnę kind (liczniki) - bez
+ * czytania tekstów. Usunięcie zeruje kind (slot nie jest ponownie używany).
+ * Zmiana tekstu dopisuje nową wartość do strings.dat, a stara zostaje w
+ * pliku do czasu ponownego importu.
+ *
+ * Odczyty biorą blokadę do odczytu, zapisy - do zapisu (powiększenie plików
+ * podmienia mapowania). Zapis trafia na dysk przy {@link #flush()} i
+ * {@link #close()} albo wtedy, gdy system zrzuci strony. Pojedyncze
+ * mapowanie ma limit 2 GB, co przy kolumnie salary (8 B) daje ok. 268 mln
+ * slotów, a strings.dat ogranicza do 2 GB tekstów.
+ */
+public final class MappedStore extends PersonStore implements AutoCloseable {
+
+	private static final int FORMAT = 2;
+	// format, liczba użytych slotów, koniec strings.dat, rozmiar tablicy external_id.idx
+	// (0 = do odbudowy), wpisy żywe w tablicy, wpisy zajęte (żywe + usunięte)
+	private static final int HEADER_SIZE = 24;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INITIAL_HEAP = 64 * 1024;
+	private static final int INITIAL_TABLE = 2048;
+	// wpisy tablicy external_id.idx (poza id wiersza)
+	private static final int EMPTY = 0;
+	private static final int REMOVED = -1;
+	private static final int NULL_INT = Integer.MIN_VALUE;
+	private static final int NULL_CODE = -1;
+	// indeks = wartość kolumny kind; 0 = slot pusty lub usunięty
+	private static final String[] KINDS = { null, "PERSON", "EMPLOYEE", "STUDENT" };
+	// sloty przeglądane pod jedną blokadą odczytu - zapis czeka najwyżej na jedną porcję skanu
+	private static final int SCAN_CHUNK = 64 * 1024;
+	// klucz sortowania wartości null - przed każdą wartością (jak nullsFirst w MemoryStore.VALUE_ORDER)
+	private static final long NULL_KEY = Long.MIN_VALUE;
+
+	private enum Column {
+		// NAME, SURNAME, EXTERNAL_ID: przesunięcie int + długość int w strings.dat (długość -1 = null)
+		KIND(1), VERSION(4), NAME(8), SURNAME(8), AGE(4), DATE_OF_BIRTH(4), START_DATE(4), SALARY(8), POSITION(4),
+		UNIVERSITY(4), YEAR(4), EXTERNAL_ID(8);
+
+		private final int width;
+
+		Column(int width) {
+			this.width = width;
+		}
+
+		String fileName() {
+			return name().toLowerCase() + ".col";
+		}
+	}
+
+	private static final Column[] COLUMNS = Column.values();
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final FileChannel[] channels = new FileChannel[COLUMNS.length];
+	private final MappedByteBuffer[] buffers = new MappedByteBuffer[COLUMNS.length];
+	private final FileChannel headerChannel;
+	private final MappedByteBuffer header;
+	private final FileChannel heapChannel;
+	private final FileChannel tableChannel;
+	private final FileChannel dictionaryChannel;
+	// słownik tylko dla position i university
+	private final List<String> dictionary = new ArrayList<>();
+	private final Map<String, Integer> codes = new HashMap<>();
+	private final long[] counts = new long[KINDS.length];
+	private final AtomicInteger sequence;
+
+	// chronione przez lock
+	private int capacity;
+	private int used;
+	private MappedByteBuffer heap;
+	private int heapCapacity;
+	private int heapEnd;
+	private MappedByteBuffer table;
+	private int tableSize;
+	private int tableLive;
+	private int tableFilled;
+
+	private MappedStore(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		headerChannel = FileChannel.open(directory.resolve("header"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		boolean created = headerChannel.size() == 0;
+		header = headerChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		if (created) {
+			header.putInt(0, FORMAT);
+		} else if (header.getInt(0) != FORMAT) {
+			throw new IOException("Unsupported store format " + header.getInt(0) + " in " + directory);
+		}
+		used = header.getInt(4);
+		heapEnd = header.getInt(8);
+		tableSize = header.getInt(12);
+		tableLive = header.getInt(16);
+		tableFilled = header.getInt(20);
+		capacity = INITIAL_CAPACITY;
+		while (capacity < used)
+			capacity *= 2;
+		for (Column column : COLUMNS) {
+			channels[column.ordinal()] = FileChannel.open(directory.resolve(column.fileName()),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			buffers[column.ordinal()] = map(column);
+		}
+		Path dictionaryFile = directory.resolve("dictionary.dat");
+		dictionaryChannel = FileChannel.open(dictionaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		loadDictionary(dictionaryFile);
+		heapChannel = FileChannel.open(directory.resolve("strings.dat"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		heapCapacity = INITIAL_HEAP;
+		while (heapCapacity < heapEnd)
+			heapCapacity = (int) Math.min(Integer.MAX_VALUE, 2L * heapCapacity);
+		heap = map(heapChannel, heapCapacity);
+		tableChannel = FileChannel.open(directory.resolve("external_id.idx"), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (tableSize == 0)
+			// nowy katalog albo awaria w trakcie przebudowy tablicy
+			rebuildTable(INITIAL_TABLE);
+		else
+			table = map(tableChannel, (long) tableSize * 4);
+		for (int slot = 0; slot < used; slot++) {
+			int kind = buffer(Column.KIND).get(slot);
+			if (kind != 0)
+				counts[kind]++;
+		}
+		sequence = new AtomicInteger(used);
+	}
+
+	/** Otwiera magazyn w katalogu (tworzy pusty, jeśli go nie ma) */
+	public static MappedStore open(Path directory) throws IOException {
+		return new MappedStore(directory);
+	}
+
+	/** Zapisuje zmienione strony wszystkich plików na dysk */
+	public void flush() {
+		lock.readLock().lock();
+		try {
+			for (MappedByteBuffer buffer : buffers)
+				buffer.force();
+			heap.force();
+			table.force();
+			header.force();
+			dictionaryChannel.force(false);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Zapisuje dane i zamyka pliki (mapowania zwalnia GC) */
+	@Override
+	public void close() {
+		flush();
+		lock.writeLock().lock();
+		try {
+			for (FileChannel channel : channels)
+				channel.close();
+			headerChannel.close();
+			heapChannel.close();
+			tableChannel.close();
+			dictionaryChannel.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	int nextId() {
+		return sequence.incrementAndGet();
+	}
+
+	@Override
+	PersonRow get(int id, String kind) {
+		lock.readLock().lock();
+		try {
+			int slot = id - 1;
+			return slot >= 0 && slot < used && visible(slot, kindCode(kind)) ? read(slot) : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	Integer idByExternalId(String kind, String externalId) {
+		lock.readLock().lock();
+		try {
+			int slot = findExternal(kindCode(kind), externalId.getBytes(StandardCharsets.UTF_8));
+			return slot < 0 ? null : slot + 1;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	void insert(PersonRow row) throws SQLIntegrityConstraintViolationException {
+		lock.writeLock().lock();
+		try {
+			byte[] externalId = row.externalId() == null ? null : row.externalId().getBytes(StandardCharsets.UTF_8);
+			if (externalId != null && findExternal(kindCode(row.kind()), externalId) >= 0)
+				throw duplicate(row);
+			int slot = row.id() - 1;
+			ensureCapacity(slot + 1);
+			write(slot, row);
+			if (slot >= used) {
+				used = slot + 1;
+				header.putInt(4, used);
+			}
+			if (externalId != null)
+				addExternal(kindCode(row.kind()), externalId, slot);
+			counts[kindCode(row.kind())]++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	Outcome update(int id, String kind, Integer expectedVersion, UnaryOperator<PersonRow> change)
+			throws SQLIntegrityConstraintViolationException {
+		lock.writeLock().lock();
+		try {
+			int slot = id - 1;
+			if (slot < 0 || slot >= used || !visible(slot, kindCode(kind)))
+				return Outcome.MISSING;
+			PersonRow current = read(slot);
+			if (expectedVersion != null && current.version() != expectedVersion)
+				return Outcome.STALE;
+			PersonRow next = change.apply(current);
+			if (Objects.equals(current.externalId(), next.externalId())) {
+				write(slot, next);
+				return Outcome.DONE;
+			}
+			// nowy klucz zewnętrzny musi być wolny (jak uk_persons_kind_external_id)
+			byte[] externalId = next.externalId() == null ? null : next.externalId().getBytes(StandardCharsets.UTF_8);
+			if (externalId != null && findExternal(kindCode(next.kind()), externalId) >= 0)
+				throw duplicate(next);
+			if (current.externalId() != null)
+				removeExternal(kindCode(current.kind()), current.externalId().getBytes(StandardCharsets.UTF_8), slot);
+			write(slot, next);
+			if (externalId != null)
+				addExternal(kindCode(next.kind()), externalId, slot);
+			return Outcome.DONE;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	Outcome delete(int id, String kind, Integer expectedVersion) {
+		lock.writeLock().lock();
+		try {
+			int slot = id - 1;
+			if (slot < 0 || slot >= used || !visible(slot, kindCode(kind)))
+				return Outcome.MISSING;
+			if (expectedVersion != null && buffer(Column.VERSION).getInt(slot * 4) != expectedVersion)
+				return Outcome.STALE;
+			int removedKind = buffer(Column.KIND).get(slot);
+			byte[] externalId = bytes(Column.EXTERNAL_ID, slot);
+			if (externalId != null)
+				removeExternal(removedKind, externalId, slot);
+			buffer(Column.KIND).put(slot, (byte) 0);
+			counts[removedKind]--;
+			return Outcome.DONE;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	long count(String kind, Specification filter) {
+		lock.readLock().lock();
+		try {
+			int k = kindCode(kind);
+			if (filter.isEmpty()) {
+				if (k != 0)
+					return counts[k];
+				long total = 0;
+				for (long count : counts)
+					total += count;
+				return total;
+			}
+			long matched = 0;
+			for (int slot = 0; slot < used; slot++)
+				if (visible(slot, k) && matches(slot, filter))
+					matched++;
+			return matched;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	Stream<PersonRow> stream(String kind) {
+		int k = kindCode(kind);
+		int end;
+		lock.readLock().lock();
+		try {
+			end = used;
+		} finally {
+			lock.readLock().unlock();
+		}
+		// każdy wiersz czytany pod krótką blokadą - strumień nie blokuje zapisów na cały czas przejścia
+		return IntStream.range(0, end).mapToObj(slot -> {
+			lock.readLock().lock();
+			try {
+				return visible(slot, k) ? read(slot) : null;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}).filter(row -> row != null);
+	}
+
+	@Override
+	List<PersonRow> scan(String kind, Specification filter, String column, boolean asc, Keyset after, int skip,
+			int limit) {
+		int k = kindCode(kind);
+		if (!"id".equals(column))
+			return scanSorted(k, filter, column, asc, after, skip, limit);
+		lock.readLock().lock();
+		try {
+			// kolejność slotów = kolejność id, bez sortowania
+			List<PersonRow> result = new ArrayList<>(Math.min(limit, 1024));
+			int afterSlot = after == null ? (asc ? -1 : used) : ((Number) after.getId()).intValue() - 1;
+			int step = asc ? 1 : -1;
+			for (int slot = afterSlot + step; slot >= 0 && slot < used && result.size() < limit; slot += step) {
+				if (!visible(slot, k) || !matches(slot, filter))
+					continue;
+				if (skip > 0)
+					skip--;
+				else
+					result.add(read(slot));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sortowanie po kolumnie innej niż id: wybór skip + limit najlepszych
+	 * slotów kopcem na tablicach prymitywów. Kolumna sortowania jest czytana raz
+	 * na slot jako klucz long (teksty - prefiks, pełne porównanie tylko przy
+	 * remisie prefiksów). Blokada jest zwalniana między porcjami slotów, więc
+	 * wynik jest słabo spójny jak iteratory MemoryStore: wiersz zmieniony w
+	 * trakcie skanu może wypaść ze strony.
+	 */
+	private List<PersonRow> scanSorted(int k, Specification filter, String column, boolean asc, Keyset after,
+			int skip, int limit) {
+		int end;
+		lock.readLock().lock();
+		try {
+			end = used;
+		} finally {
+			lock.readLock().unlock();
+		}
+		TopSlots top = new TopSlots(column, asc, (int) Math.min((long) skip + limit, end));
+		long afterKey = after == null ? 0 : sortKey(column, after.getSortValue());
+		int afterSlot = after == null ? 0 : ((Number) after.getId()).intValue() - 1;
+		for (int from = 0; from < end; from += SCAN_CHUNK) {
+			lock.readLock().lock();
+			try {
+				for (int slot = from, to = Math.min(end, from + SCAN_CHUNK); slot < to; slot++) {
+					if (!visible(slot, k) || !matches(slot, filter))
+						continue;
+					long key = sortKey(column, slot);
+					if (after != null) {
+						int cmp = Long.compare(key, afterKey);
+						if (cmp == 0 && isText(column))
+							cmp = MemoryStore.VALUE_ORDER.compare(value(slot, column), after.getSortValue());
+						if (cmp == 0)
+							cmp = Integer.compare(slot, afterSlot);
+						if (asc ? cmp <= 0 : cmp >= 0)
+							continue;
+					}
+					top.offer(key, slot);
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		lock.readLock().lock();
+		try {
+			int[] ordered = top.sorted();
+			List<PersonRow> result = new ArrayList<>(Math.min(limit, ordered.length));
+			for (int i = skip; i < ordered.length && result.size() < limit; i++) {
+				int slot = ordered[i];
+				// wiersz usunięty lub zmieniony po przejściu jego porcji
+				if (visible(slot, k) && matches(slot, filter))
+					result.add(read(slot));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Ograniczony kopiec (klucz, slot): w korzeniu najgorszy z zachowanych
+	 * slotów, więc lepszy kandydat go wypiera w O(log n) bez obiektów na slot.
+	 * Metody wywołuje się pod blokadą odczytu (remis prefiksów czyta teksty).
+	 */
+	private final class TopSlots {
+		private final String column;
+		private final boolean asc;
+		private final boolean text;
+		private final int capacity;
+		private long[] keys;
+		private int[] slots;
+		private int size;
+
+		private TopSlots(String column, boolean asc, int capacity) {
+			this.column = column;
+			this.asc = asc;
+			this.text = isText(column);
+			this.capacity = capacity;
+			int initial = Math.min(capacity, 1024);
+			this.keys = new long[initial];
+			this.slots = new int[initial];
+		}
+
+		void offer(long key, int slot) {
+			if (capacity == 0)
+				return;
+			if (size < capacity) {
+				if (size == keys.length) {
+					int grown = (int) Math.min(capacity, 2L * keys.length);
+					keys = Arrays.copyOf(keys, grown);
+					slots = Arrays.copyOf(slots, grown);
+				}
+				keys[size] = key;
+				slots[size] = slot;
+				siftUp(size++);
+			} else if (compare(key, slot, keys[0], slots[0]) < 0) {
+				keys[0] = key;
+				slots[0] = slot;
+				siftDown(0, size);
+			}
+		}
+
+		/** Sloty w kolejności strony (kopiec jest przy tym niszczony) */
+		int[] sorted() {
+			for (int n = size - 1; n > 0; n--) {
+				swap(0, n);
+				siftDown(0, n);
+			}
+			return Arrays.copyOf(slots, size);
+		}
+
+		// < 0: (ka, sa) jest wcześniej na stronie niż (kb, sb)
+		private int compare(long ka, int sa, long kb, int sb) {
+			int cmp = Long.compare(ka, kb);
+			if (cmp == 0 && text)
+				cmp = MemoryStore.VALUE_ORDER.compare(value(sa, column), value(sb, column));
+			if (cmp == 0)
+				cmp = Integer.compare(sa, sb);
+			return asc ? cmp : -cmp;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (compare(keys[i], slots[i], keys[parent], slots[parent]) <= 0)
+					return;
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i, int n) {
+			while (true) {
+				int worst = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < n && compare(keys[left], slots[left], keys[worst], slots[worst]) > 0)
+					worst = left;
+				if (right < n && compare(keys[right], slots[right], keys[worst], slots[worst]) > 0)
+					worst = right;
+				if (worst == i)
+					return;
+				swap(i, worst);
+				i = worst;
+			}
+		}
+
+		private void swap(int a, int b) {
+			long key = keys[a];
+			keys[a] = keys[b];
+			keys[b] = key;
+			int slot = slots[a];
+			slots[a] = slots[b];
+			slots[b] = slot;
+		}
+	}
+
+	// ===== klucze sortowania: long o tej samej kolejności co MemoryStore.VALUE_ORDER =====
+
+	private static boolean isText(String column) {
+		return switch (column) {
+		case "name", "surname", "position", "university" -> true;
+		default -> false;
+		};
+	}
+
+	private long sortKey(String column, int slot) {
+		return switch (column) {
+		case "name" -> textKey(Column.NAME, slot);
+		case "surname" -> textKey(Column.SURNAME, slot);
+		case "age" -> intKey(buffer(Column.AGE).getInt(slot * 4));
+		case "date_of_birth" -> intKey(buffer(Column.DATE_OF_BIRTH).getInt(slot * 4));
+		case "start_date" -> intKey(buffer(Column.START_DATE).getInt(slot * 4));
+		case "salary" -> doubleKey(buffer(Column.SALARY).getDouble(slot * 8));
+		case "position" -> textKey(string(Column.POSITION, slot));
+		case "university" -> textKey(string(Column.UNIVERSITY, slot));
+		case "year" -> intKey(buffer(Column.YEAR).getInt(slot * 4));
+		case "version" -> buffer(Column.VERSION).getInt(slot * 4);
+		default -> throw new IllegalArgumentException("Unknown column: " + column);
+		};
+	}
+
+	// klucz wartości kursora (Integer, LocalDate, Double, String)
+	private static long sortKey(String column, Object value) {
+		if (value == null)
+			return NULL_KEY;
+		if (value instanceof String text)
+			return textKey(text);
+		if (value instanceof LocalDate date)
+			return date.toEpochDay();
+		if ("salary".equals(column))
+			return doubleKey(((Number) value).doubleValue());
+		return ((Number) value).longValue();
+	}
+
+	private static long intKey(int stored) {
+		return stored == NULL_INT ? NULL_KEY : stored;
+	}
+
+	// bity double ułożone tak, żeby porównanie long dało kolejność Double.compare; NaN = null
+	private static long doubleKey(double value) {
+		if (Double.isNaN(value))
+			return NULL_KEY;
+		long bits = Double.doubleToLongBits(value);
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * Pierwsze 4 znaki UTF-16 po zrównaniu wielkości liter (jak
+	 * String.CASE_INSENSITIVE_ORDER), krótszy tekst dopełniony zerami. Bit
+	 * znaku odwrócony - porównanie ze znakiem daje kolejność znaków bez znaku.
+	 * Równe klucze nie znaczą równych tekstów - o remisie rozstrzyga pełne
+	 * porównanie.
+	 */
+	private static long textKey(String value) {
+		if (value == null)
+			return NULL_KEY;
+		long key = 0;
+		for (int i = 0; i < 4; i++)
+			key = key << 16 | (i < value.length() ? fold(value.charAt(i)) : 0);
+		return key ^ Long.MIN_VALUE;
+	}
+
+	// jak textKey(String), ale wprost z bajtów UTF-8 w strings.dat - bez budowania tekstu
+	private long textKey(Column column, int slot) {
+		int length = buffer(column).getInt(slot * 8 + 4);
+		if (length < 0)
+			return NULL_KEY;
+		int at = buffer(column).getInt(slot * 8);
+		int end = at + length;
+		long key = 0;
+		int chars = 0;
+		while (chars < 4 && at < end) {
+			int b = heap.get(at) & 0xFF;
+			int codePoint;
+			if (b < 0x80) {
+				codePoint = b;
+				at += 1;
+			} else if (b < 0xE0) {
+				codePoint = (b & 0x1F) << 6 | heap.get(at + 1) & 0x3F;
+				at += 2;
+			} else if (b < 0xF0) {
+				codePoint = (b & 0x0F) << 12 | (heap.get(at + 1) & 0x3F) << 6 | heap.get(at + 2) & 0x3F;
+				at += 3;
+			} else {
+				codePoint = (b & 0x07) << 18 | (heap.get(at + 1) & 0x3F) << 12 | (heap.get(at + 2) & 0x3F) << 6
+						| heap.get(at + 3) & 0x3F;
+				at += 4;
+			}
+			if (Character.isBmpCodePoint(codePoint)) {
+				key = key << 16 | fold((char) codePoint);
+				chars++;
+			} else {
+				key = key << 16 | Character.highSurrogate(codePoint);
+				if (++chars < 4) {
+					key = key << 16 | Character.lowSurrogate(codePoint);
+					chars++;
+				}
+			}
+		}
+		return (chars == 0 ? 0 : key << 16 * (4 - chars)) ^ Long.MIN_VALUE;
+	}
+
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	// ===== dostęp do kolumn (wywołujący trzyma blokadę) =====
+
+	private boolean visible(int slot, int kind) {
+		int stored = buffer(Column.KIND).get(slot);
+		return stored != 0 && (kind == 0 || stored == kind);
+	}
+
+	private boolean matches(int slot, Specification filter) {
+		return filter.isEmpty() || filter.matches(column -> value(slot, column));
+	}
+
+	// pojedyncza kolumna bez budowania całego wiersza (filtry, sortowanie)
+	private Object value(int slot, String column) {
+		return switch (column) {
+		case "id" -> slot + 1;
+		case "name" -> heapString(Column.NAME, slot);
+		case "surname" -> heapString(Column.SURNAME, slot);
+		case "age" -> integer(Column.AGE, slot);
+		case "date_of_birth" -> date(Column.DATE_OF_BIRTH, slot);
+		case "start_date" -> date(Column.START_DATE, slot);
+		case "salary" -> salary(slot);
+		case "position" -> string(Column.POSITION, slot);
+		case "university" -> string(Column.UNIVERSITY, slot);
+		case "year" -> integer(Column.YEAR, slot);
+		case "version" -> buffer(Column.VERSION).getInt(slot * 4);
+		default -> throw new IllegalArgumentException("Unknown column: " + column);
+		};
+	}
+
+	private PersonRow read(int slot) {
+		return new PersonRow(slot + 1, KINDS[buffer(Column.KIND).get(slot)], heapString(Column.NAME, slot),
+				heapString(Column.SURNAME, slot), integer(Column.AGE, slot), date(Column.DATE_OF_BIRTH, slot),
+				date(Column.START_DATE, slot), salary(slot), string(Column.POSITION, slot),
+				string(Column.UNIVERSITY, slot), integer(Column.YEAR, slot), heapString(Column.EXTERNAL_ID, slot),
+				buffer(Column.VERSION).getInt(slot * 4));
+	}
+
+	// kind na końcu - do tego momentu slot jest dla czytelnika pusty
+	private void write(int slot, PersonRow row) {
+		buffer(Column.VERSION).putInt(slot * 4, row.version());
+		putHeapString(Column.NAME, slot, row.name());
+		putHeapString(Column.SURNAME, slot, row.surname());
+		putInteger(Column.AGE, slot, row.age());
+		putDate(Column.DATE_OF_BIRTH, slot, row.dateOfBirth());
+		putDate(Column.START_DATE, slot, row.startDate());
+		buffer(Column.SALARY).putDouble(slot * 8, row.salary() == null ? Double.NaN : row.salary());
+		putString(Column.POSITION, slot, row.position());
+		putString(Column.UNIVERSITY, slot, row.university());
+		putInteger(Column.YEAR, slot, row.year());
+		putHeapString(Column.EXTERNAL_ID, slot, row.externalId());
+		buffer(Column.KIND).put(slot, (byte) kindCode(row.kind()));
+	}
+
+	private String string(Column column, int slot) {
+		int code = buffer(column).getInt(slot * 4);
+		return code == NULL_CODE ? null : dictionary.get(code);
+	}
+
+	private String heapString(Column column, int slot) {
+		byte[] bytes = bytes(column, slot);
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private byte[] bytes(Column column, int slot) {
+		int length = buffer(column).getInt(slot * 8 + 4);
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		heap.get(buffer(column).getInt(slot * 8), bytes);
+		return bytes;
+	}
+
+	private boolean heapEquals(Column column, int slot, byte[] bytes) {
+		if (buffer(column).getInt(slot * 8 + 4) != bytes.length)
+			return false;
+		int at = buffer(column).getInt(slot * 8);
+		for (int i = 0; i < bytes.length; i++)
+			if (heap.get(at + i) != bytes[i])
+				return false;
+		return true;
+	}
+
+	private Integer integer(Column column, int slot) {
+		int v = buffer(column).getInt(slot * 4);
+		return v == NULL_INT ? null : v;
+	}
+
+	private LocalDate date(Column column, int slot) {
+		int v = buffer(column).getInt(slot * 4);
+		return v == NULL_INT ? null : LocalDate.ofEpochDay(v);
+	}
+
+	private Double salary(int slot) {
+		double v = buffer(Column.SALARY).getDouble(slot * 8);
+		return Double.isNaN(v) ? null : v;
+	}
+
+	private void putString(Column column, int slot, String value) {
+		buffer(column).putInt(slot * 4, value == null ? NULL_CODE : encode(value));
+	}
+
+	// niezmieniony tekst zostaje na miejscu - update przepisujący cały wiersz nie rozdyma strings.dat
+	private void putHeapString(Column column, int slot, String value) {
+		if (value == null) {
+			buffer(column).putInt(slot * 8 + 4, -1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (heapEquals(column, slot, bytes))
+			return;
+		ensureHeap((long) heapEnd + bytes.length);
+		heap.put(heapEnd, bytes);
+		buffer(column).putInt(slot * 8, heapEnd);
+		buffer(column).putInt(slot * 8 + 4, bytes.length);
+		heapEnd += bytes.length;
+		header.putInt(8, heapEnd);
+	}
+
+	private void putInteger(Column column, int slot, Integer value) {
+		buffer(column).putInt(slot * 4, value == null ? NULL_INT : value);
+	}
+
+	private void putDate(Column column, int slot, LocalDate value) {
+		buffer(column).putInt(slot * 4, value == null ? NULL_INT : (int) value.toEpochDay());
+	}
+
+	private MappedByteBuffer buffer(Column column) {
+		return buffers[column.ordinal()];
+	}
+
+	// ===== unikalny klucz (kind, external_id): tablica mieszająca w external_id.idx =====
+
+	// slot wiersza z kluczem albo -1; usunięte wpisy nie przerywają próbkowania
+	private int findExternal(int kind, byte[] externalId) {
+		int mask = tableSize - 1;
+		for (int i = hash(kind, externalId) & mask;; i = (i + 1) & mask) {
+			int entry = table.getInt(i * 4);
+			if (entry == EMPTY)
+				return -1;
+			if (entry != REMOVED && buffer(Column.KIND).get(entry - 1) == kind
+					&& heapEquals(Column.EXTERNAL_ID, entry - 1, externalId))
+				return entry - 1;
+		}
+	}
+
+	// wywoływane po zapisie wiersza - przebudowa tablicy czyta klucze z kolumn
+	private void addExternal(int kind, byte[] externalId, int slot) {
+		if (2L * (tableFilled + 1) > tableSize) {
+			// przebudowa obejmuje już zapisany slot
+			rebuildTable(Math.max(tableSize, Integer.highestOneBit(Math.max(1, tableLive + 1)) * 4));
+			return;
+		}
+		int mask = tableSize - 1;
+		int i = hash(kind, externalId) & mask;
+		while (table.getInt(i * 4) > 0)
+			i = (i + 1) & mask;
+		if (table.getInt(i * 4) == EMPTY)
+			header.putInt(20, ++tableFilled);
+		table.putInt(i * 4, slot + 1);
+		header.putInt(16, ++tableLive);
+	}
+
+	private void removeExternal(int kind, byte[] externalId, int slot) {
+		int mask = tableSize - 1;
+		for (int i = hash(kind, externalId) & mask;; i = (i + 1) & mask) {
+			int entry = table.getInt(i * 4);
+			if (entry == EMPTY)
+				return;
+			if (entry == slot + 1) {
+				table.putInt(i * 4, REMOVED);
+				header.putInt(16, --tableLive);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Buduje tablicę od nowa z kolumn kind i external_id (powiększenie,
+	 * czyszczenie usuniętych wpisów). Rozmiar 0 w nagłówku na czas przebudowy -
+	 * po awarii tablica jest odbudowywana przy otwarciu.
+	 */
+	private void rebuildTable(int size) {
+		header.putInt(12, 0);
+		table = map(tableChannel, (long) size * 4);
+		for (int i = 0; i < size; i++)
+			table.putInt(i * 4, EMPTY);
+		tableSize = size;
+		tableLive = 0;
+		int mask = size - 1;
+		for (int slot = 0; slot < used; slot++) {
+			int kind = buffer(Column.KIND).get(slot);
+			byte[] externalId = kind == 0 ? null : bytes(Column.EXTERNAL_ID, slot);
+			if (externalId == null)
+				continue;
+			int i = hash(kind, externalId) & mask;
+			while (table.getInt(i * 4) != EMPTY)
+				i = (i + 1) & mask;
+			table.putInt(i * 4, slot + 1);
+			tableLive++;
+		}
+		tableFilled = tableLive;
+		header.putInt(16, tableLive);
+		header.putInt(20, tableFilled);
+		header.putInt(12, tableSize);
+	}
+
+	private static int hash(int kind, byte[] externalId) {
+		int h = kind;
+		for (byte b : externalId)
+			h = 31 * h + b;
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static SQLIntegrityConstraintViolationException duplicate(PersonRow row) {
+		return new SQLIntegrityConstraintViolationException("Duplicate entry '" + row.kind() + "-"
+				+ row.externalId() + "' for key 'uk_persons_kind_external_id'");
+	}
+
+	// ===== słownik position i university: [długość int][UTF-8], kod = pozycja wpisu =====
+
+	private int encode(String value) {
+		Integer code = codes.get(value);
+		if (code != null)
+			return code;
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).flip();
+		try {
+			while (entry.hasRemaining())
+				dictionaryChannel.write(entry);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		code = dictionary.size();
+		dictionary.add(value);
+		codes.put(value, code);
+		return code;
+	}
+
+	private void loadDictionary(Path file) throws IOException {
+		long complete = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			while (true) {
+				byte[] bytes;
+				try {
+					bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+				} catch (EOFException end) {
+					break;
+				}
+				String value = new String(bytes, StandardCharsets.UTF_8);
+				codes.putIfAbsent(value, dictionary.size());
+				dictionary.add(value);
+				complete += 4 + bytes.length;
+			}
+		}
+		// urwany ostatni wpis (awaria w trakcie dopisywania) - żaden slot go jeszcze nie używa
+		if (dictionaryChannel.size() > complete)
+			dictionaryChannel.truncate(complete);
+	}
+
+	// ===== rozmiar plików =====
+
+	private void ensureCapacity(int slots) {
+		if (slots <= capacity)
+			return;
+		while (capacity < slots)
+			capacity *= 2;
+		for (Column column : COLUMNS)
+			buffers[column.ordinal()] = map(column);
+	}
+
+	private void ensureHeap(long bytes) {
+		if (bytes <= heapCapacity)
+			return;
+		if (bytes > Integer.MAX_VALUE)
+			throw new IllegalStateException("strings.dat exceeds 2 GB");
+		while (heapCapacity < bytes)
+			heapCapacity = (int) Math.min(Integer.MAX_VALUE, 2L * heapCapacity);
+		heap = map(heapChannel, heapCapacity);
+	}
+
+	// mapowanie większe niż plik powiększa plik; nowe sloty są zerowe (kind 0 = pusty)
+	private MappedByteBuffer map(Column column) {
+		return map(channels[column.ordinal()], (long) capacity * column.width);
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long size) {
+		try {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private static int kindCode(String kind) {
+		if (kind == null)
+			return 0;
+		for (int i = 1; i < KINDS.length; i++)
+			if (KINDS[i].equals(kind))
+				return i;
+		throw new IllegalArgumentException("Unknown kind: " + kind);
+	}
+}
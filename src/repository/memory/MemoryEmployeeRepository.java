@@ -0,0 +1,29 @@
+package repository.memory;
+
+import model.Employee;
+import repository.EmployeeRepository;
+
+/**
+ * Repozytorium pracowników w pamięci (wiersze kind = 'EMPLOYEE').
+ */
+public class MemoryEmployeeRepository extends MemoryRepository<Employee> implements EmployeeRepository {
+
+	public MemoryEmployeeRepository(PersonStore store) {
+		super(store, "EMPLOYEE", "EMPLOYEE", "Employee");
+	}
+
+	@Override
+	Employee toEntity(PersonRow row) {
+		Employee employee = new Employee(row.id(), row.name(), row.surname(), row.age(), row.dateOfBirth(),
+				row.startDate(), row.salary(), row.position());
+		employee.setVersion(row.version());
+		employee.setExternalId(row.externalId());
+		employee.markClean();
+		return employee;
+	}
+
+	@Override
+	PersonRow withColumns(PersonRow row, Employee entity) {
+		return row.withEmployee(entity.getSalary(), entity.getPosition());
+	}
+}
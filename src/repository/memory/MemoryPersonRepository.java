@@ -0,0 +1,31 @@
+package repository.memory;
+
+import model.Person;
+import repository.PersonRepository;
+
+/**
+ * Repozytorium osób w pamięci. Jak PersonRepositoryImpl: odczyty obejmują
+ * wszystkie rodzaje, zapis tworzy wiersz kind = 'PERSON'.
+ */
+public class MemoryPersonRepository extends MemoryRepository<Person> implements PersonRepository {
+
+	public MemoryPersonRepository(PersonStore store) {
+		super(store, null, "PERSON", "Person");
+	}
+
+	@Override
+	Person toEntity(PersonRow row) {
+		Person person = new Person(row.id(), row.name(), row.surname(), row.age(), row.dateOfBirth(),
+				row.startDate()) {
+		};
+		person.setVersion(row.version());
+		person.setExternalId(row.externalId());
+		person.markClean();
+		return person;
+	}
+
+	@Override
+	PersonRow withColumns(PersonRow row, Person entity) {
+		return row;
+	}
+}
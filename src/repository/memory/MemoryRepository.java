@@ -0,0 +1,227 @@
+package repository.memory;
+
+import model.Person;
+import repository.BaseRepository;
+import repository.Keyset;
+import repository.OptimisticLockException;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
+import repository.Specification;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Wspólna część repozytoriów in-memory nad {@link PersonStore} - ten sam
+ * kontrakt co JdbcRepository (paginacja keyset/offset, filtry, projekcje,
+ * optimistic locking, upsert po externalId), bez bazy danych.
+ *
+ * Encje są kopiami wierszy: zmiana obiektu nie zmienia magazynu, dopóki nie
+ * zostanie zapisana. Operacje masowe nie są atomowe (brak transakcji).
+ *
+ * @param <T> typ encji
+ */
+abstract class MemoryRepository<T extends Person> implements BaseRepository<T, Integer> {
+
+	private final PersonStore store;
+	private final String kind;
+	private final String insertKind;
+	private final String entityName;
+
+	/**
+	 * @param kind       rodzaj widocznych wierszy lub null (wszystkie rodzaje)
+	 * @param insertKind rodzaj wierszy tworzonych przez save
+	 */
+	MemoryRepository(PersonStore store, String kind, String insertKind, String entityName) {
+		this.store = store;
+		this.kind = kind;
+		this.insertKind = insertKind;
+		this.entityName = entityName;
+	}
+
+	/** Encja z wiersza (śledzenie zmian włączone) */
+	abstract T toEntity(PersonRow row);
+
+	/** Uzupełnia wiersz o kolumny podtypu z encji */
+	abstract PersonRow withColumns(PersonRow row, T entity);
+
+	@Override
+	public T save(T entity) throws SQLIntegrityConstraintViolationException {
+		PersonRow row = withColumns(PersonRow.of(store.nextId(), insertKind, entity), entity);
+		store.insert(row);
+		entity.setId(row.id());
+		entity.setVersion(0);
+		entity.markClean();
+		return entity;
+	}
+
+	@Override
+	public Optional<T> findById(Integer id) {
+		return Optional.ofNullable(store.get(id, kind)).map(this::toEntity);
+	}
+
+	@Override
+	public List<T> findAllById(Collection<Integer> ids) {
+		List<T> found = new ArrayList<>(ids.size());
+		for (Integer id : new LinkedHashSet<>(ids)) {
+			PersonRow row = store.get(id, kind);
+			if (row != null)
+				found.add(toEntity(row));
+		}
+		return found;
+	}
+
+	@Override
+	public List<T> findAll() {
+		return store.stream(kind).map(this::toEntity).toList();
+	}
+
+	@Override
+	public void forEachEntity(Consumer<? super T> action) {
+		store.stream(kind).map(this::toEntity).forEach(action);
+	}
+
+	@Override
+	public Stream<T> streamAll() {
+		return store.stream(kind).map(this::toEntity);
+	}
+
+	@Override
+	public List<T> findAll(int page, int size, String sortBy, boolean asc) {
+		return findAll(Specification.all(), page, size, sortBy, asc);
+	}
+
+	@Override
+	public List<T> findAll(Specification filter, int page, int size, String sortBy, boolean asc) {
+		return store.scan(kind, filter, sortColumn(sortBy), asc, null, page * size, size).stream()
+				.map(this::toEntity).toList();
+	}
+
+	@Override
+	public Page<T> findPage(PageRequest request) {
+		return page(request, this::toEntity);
+	}
+
+	@Override
+	public Page<RowView> findRows(List<String> columns, PageRequest request) {
+		if (columns == null || columns.isEmpty())
+			throw new IllegalArgumentException("At least one column is required");
+		String[] select = new String[columns.size()];
+		for (int i = 0; i < select.length; i++) {
+			String c = columns.get(i);
+			select[i] = c == null ? "" : c.trim().toLowerCase();
+			if (!PersonRow.COLUMNS.contains(select[i]))
+				throw new IllegalArgumentException("Unknown column: " + c);
+		}
+		return page(request, row -> {
+			Object[] values = new Object[select.length];
+			for (int i = 0; i < select.length; i++) {
+				Object v = row.get(select[i]);
+				// daty jako tekst ISO, jak w projekcji JDBC
+				values[i] = v instanceof LocalDate d ? d.toString() : v;
+			}
+			return new RowView(values);
+		});
+	}
+
+	// strona keyset: size + 1 wierszy mówi, czy jest następna strona
+	private <P> Page<P> page(PageRequest request, Function<PersonRow, P> mapper) {
+		String column = sortColumn(request.getSortBy());
+		List<PersonRow> rows = store.scan(kind, request.getFilter(), column, request.isAsc(), request.getAfter(), 0,
+				request.getSize() + 1);
+		boolean more = rows.size() > request.getSize();
+		if (more)
+			rows = rows.subList(0, request.getSize());
+		List<P> content = new ArrayList<>(rows.size());
+		for (PersonRow row : rows)
+			content.add(mapper.apply(row));
+		Keyset next = null;
+		if (more) {
+			PersonRow last = rows.get(rows.size() - 1);
+			next = new Keyset(last.get(column), last.id());
+		}
+		long total = request.isWithTotal() ? store.count(kind, request.getFilter()) : Page.UNKNOWN_TOTAL;
+		return new Page<>(content, next, total);
+	}
+
+	@Override
+	public T update(T entity) throws SQLIntegrityConstraintViolationException {
+		// encja odczytana z magazynu bez zmian - nic do zapisania (jak częściowy UPDATE w JDBC)
+		if (!entity.isTracked() || entity.isDirty()) {
+			PersonStore.Outcome outcome = store.update(entity.getId(), kind, entity.getVersion(),
+					row -> withColumns(row.withPerson(entity), entity));
+			if (outcome != PersonStore.Outcome.DONE)
+				throw conflict(entity.getId(), entity.getVersion());
+			entity.setVersion(entity.getVersion() + 1);
+		}
+		entity.markClean();
+		return entity;
+	}
+
+	@Override
+	public boolean deleteById(Integer id) {
+		return store.delete(id, kind, null) == PersonStore.Outcome.DONE;
+	}
+
+	@Override
+	public boolean deleteById(Integer id, int expectedVersion) {
+		PersonStore.Outcome outcome = store.delete(id, kind, expectedVersion);
+		if (outcome == PersonStore.Outcome.STALE)
+			throw conflict(id, expectedVersion);
+		return outcome == PersonStore.Outcome.DONE;
+	}
+
+	@Override
+	public void upsertAll(Collection<T> entities) throws SQLIntegrityConstraintViolationException {
+		for (T entity : entities)
+			if (entity.getExternalId() == null || entity.getExternalId().isBlank())
+				throw new IllegalArgumentException("upsertAll requires externalId: " + entity);
+		for (T entity : entities)
+			upsert(entity);
+	}
+
+	// odpowiednik INSERT ... ON DUPLICATE KEY UPDATE: bez kontroli wersji, wersja + 1
+	private void upsert(T entity) throws SQLIntegrityConstraintViolationException {
+		while (true) {
+			Integer id = store.idByExternalId(insertKind, entity.getExternalId());
+			if (id == null) {
+				try {
+					store.insert(withColumns(PersonRow.of(store.nextId(), insertKind, entity), entity));
+					return;
+				} catch (SQLIntegrityConstraintViolationException ex) {
+					continue; // równoległy insert tego samego klucza - aktualizujemy jego wiersz
+				}
+			}
+			if (store.update(id, insertKind, null,
+					row -> withColumns(row.withPerson(entity), entity)) == PersonStore.Outcome.DONE)
+				return;
+			// wiersz usunięty między odczytem klucza a zapisem - próbujemy od nowa
+		}
+	}
+
+	@Override
+	public long count() {
+		return store.count(kind, Specification.all());
+	}
+
+	private OptimisticLockException conflict(Integer id, int version) {
+		return new OptimisticLockException(entityName, id, version);
+	}
+
+	// jak JdbcRepository.sortColumn: nieznana kolumna = sortowanie po id
+	private static String sortColumn(String sortBy) {
+		if (sortBy == null || sortBy.isBlank())
+			return "id";
+		String column = sortBy.trim().toLowerCase();
+		return PersonRow.SORTABLE_COLUMNS.contains(column) ? column : "id";
+	}
+}
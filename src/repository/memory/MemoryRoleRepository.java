@@ -0,0 +1,42 @@
+package repository.memory;
+
+import repository.RoleRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Katalog ról w pamięci - dla trybów bez bazy (-Dapp.storage=memory|mapped).
+ * Role nie przeżywają restartu; aplikacja zakłada je przy każdym starcie.
+ */
+public class MemoryRoleRepository implements RoleRepository {
+
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private final Map<Integer, String> names = new ConcurrentHashMap<>();
+	private final AtomicInteger sequence = new AtomicInteger();
+
+	@Override
+	public Integer findIdByName(String name) {
+		return ids.get(name);
+	}
+
+	@Override
+	public Integer findOrCreateRole(String name) {
+		return ids.computeIfAbsent(name, n -> {
+			int id = sequence.incrementAndGet();
+			names.put(id, n);
+			return id;
+		});
+	}
+
+	// katalog jest jedynym źródłem ról - nie ma czego odświeżać
+	@Override
+	public void invalidateCache() {
+	}
+
+	/** Nazwa roli o danym id lub null */
+	String nameById(Integer id) {
+		return names.get(id);
+	}
+}
@@ -0,0 +1,263 @@
+package repository.memory;
+
+import repository.Keyset;
+import repository.Specification;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Tabela persons w pamięci - wspólna dla repozytoriów osób, pracowników i
+ * studentów (jak jedna tabela z kolumną kind w MySQL).
+ *
+ * Wiersze leżą w ConcurrentSkipListMap po id, a kolumny surname, age i salary
+ * mają indeksy (wartość, id) w ConcurrentSkipListSet, więc strona w kolejności
+ * tych kolumn to przejście indeksu od kursora, bez sortowania. Sortowanie po
+ * pozostałych kolumnach sortuje kopię pasujących wierszy.
+ *
+ * Odczyty są bez blokad i słabo spójne (jak iteratory kolekcji concurrent).
+ * Zapisy jednego wiersza serializuje blokada z puli (po id), żeby podmiana
+ * wiersza i wpisów indeksów była niepodzielna względem innych zapisów.
+ * Kolejność wartości odpowiada MySQL: NULL najmniejsze, teksty bez
+ * rozróżniania wielkości liter.
+ */
+public final class MemoryStore extends PersonStore {
+
+	private static final Set<String> INDEXED = Set.of("surname", "age", "salary");
+	private static final int LOCK_STRIPES = 64;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static final Comparator<Object> VALUE_ORDER = Comparator.nullsFirst((a, b) -> a instanceof String s
+			? String.CASE_INSENSITIVE_ORDER.compare(s, (String) b)
+			: ((Comparable) a).compareTo(b));
+
+	private record IndexKey(Object value, int id) {
+	}
+
+	private static final Comparator<IndexKey> KEY_ORDER = Comparator.comparing(IndexKey::value, VALUE_ORDER)
+			.thenComparingInt(IndexKey::id);
+
+	private final ConcurrentSkipListMap<Integer, PersonRow> rows = new ConcurrentSkipListMap<>();
+	private final Map<String, ConcurrentSkipListSet<IndexKey>> indexes = new ConcurrentHashMap<>();
+	// unikalny klucz (kind, external_id) -> id
+	private final ConcurrentHashMap<String, Integer> externalIds = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+	private final AtomicInteger sequence = new AtomicInteger();
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	public MemoryStore() {
+		for (String column : INDEXED)
+			indexes.put(column, new ConcurrentSkipListSet<>(KEY_ORDER));
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new Object();
+	}
+
+	@Override
+	int nextId() {
+		return sequence.incrementAndGet();
+	}
+
+	@Override
+	PersonRow get(int id, String kind) {
+		PersonRow row = rows.get(id);
+		return row != null && visible(row, kind) ? row : null;
+	}
+
+	@Override
+	Integer idByExternalId(String kind, String externalId) {
+		return externalIds.get(externalKey(kind, externalId));
+	}
+
+	@Override
+	void insert(PersonRow row) throws SQLIntegrityConstraintViolationException {
+		if (row.externalId() != null
+				&& externalIds.putIfAbsent(externalKey(row.kind(), row.externalId()), row.id()) != null)
+			throw new SQLIntegrityConstraintViolationException(
+					"Duplicate entry '" + row.kind() + "-" + row.externalId() + "' for key 'uk_persons_kind_external_id'");
+		synchronized (lock(row.id())) {
+			rows.put(row.id(), row);
+			index(row);
+		}
+		counts.computeIfAbsent(row.kind(), k -> new LongAdder()).increment();
+	}
+
+	@Override
+	Outcome update(int id, String kind, Integer expectedVersion, UnaryOperator<PersonRow> change)
+			throws SQLIntegrityConstraintViolationException {
+		synchronized (lock(id)) {
+			PersonRow current = rows.get(id);
+			if (current == null || !visible(current, kind))
+				return Outcome.MISSING;
+			if (expectedVersion != null && current.version() != expectedVersion)
+				return Outcome.STALE;
+			PersonRow next = change.apply(current);
+			if (!Objects.equals(current.externalId(), next.externalId())) {
+				// nowy klucz zewnętrzny musi być wolny (jak uk_persons_kind_external_id)
+				if (next.externalId() != null
+						&& externalIds.putIfAbsent(externalKey(next.kind(), next.externalId()), id) != null)
+					throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + next.kind() + "-"
+							+ next.externalId() + "' for key 'uk_persons_kind_external_id'");
+				if (current.externalId() != null)
+					externalIds.remove(externalKey(current.kind(), current.externalId()), id);
+			}
+			unindex(current);
+			rows.put(id, next);
+			index(next);
+			return Outcome.DONE;
+		}
+	}
+
+	@Override
+	Outcome delete(int id, String kind, Integer expectedVersion) {
+		PersonRow removed;
+		synchronized (lock(id)) {
+			removed = rows.get(id);
+			if (removed == null || !visible(removed, kind))
+				return Outcome.MISSING;
+			if (expectedVersion != null && removed.version() != expectedVersion)
+				return Outcome.STALE;
+			rows.remove(id);
+			unindex(removed);
+			if (removed.externalId() != null)
+				externalIds.remove(externalKey(removed.kind(), removed.externalId()), id);
+		}
+		counts.get(removed.kind()).decrement();
+		return Outcome.DONE;
+	}
+
+	@Override
+	long count(String kind, Specification filter) {
+		if (filter.isEmpty()) {
+			if (kind != null) {
+				LongAdder count = counts.get(kind);
+				return count == null ? 0 : count.sum();
+			}
+			long total = 0;
+			for (LongAdder count : counts.values())
+				total += count.sum();
+			return total;
+		}
+		return stream(kind).filter(row -> filter.matches(row::get)).count();
+	}
+
+	@Override
+	Stream<PersonRow> stream(String kind) {
+		return rows.values().stream().filter(row -> visible(row, kind));
+	}
+
+	@Override
+	List<PersonRow> scan(String kind, Specification filter, String column, boolean asc, Keyset after, int skip,
+			int limit) {
+		Iterator<PersonRow> it = ordered(kind, filter, column, asc, after);
+		List<PersonRow> result = new ArrayList<>(Math.min(limit, 1024));
+		// przy równoległej zmianie wiersz może się pojawić pod starą i nową pozycją indeksu
+		Set<Integer> seen = new HashSet<>();
+		while (it.hasNext() && result.size() < limit) {
+			PersonRow row = it.next();
+			if (!visible(row, kind) || !filter.matches(row::get) || !seen.add(row.id()))
+				continue;
+			if (skip > 0)
+				skip--;
+			else
+				result.add(row);
+		}
+		return result;
+	}
+
+	private Iterator<PersonRow> ordered(String kind, Specification filter, String column, boolean asc,
+			Keyset after) {
+		if ("id".equals(column)) {
+			NavigableMap<Integer, PersonRow> view = asc ? rows : rows.descendingMap();
+			if (after != null)
+				view = view.tailMap(((Number) after.getId()).intValue(), false);
+			return view.values().iterator();
+		}
+		ConcurrentSkipListSet<IndexKey> index = indexes.get(column);
+		if (index != null) {
+			NavigableSet<IndexKey> view = asc ? index : index.descendingSet();
+			if (after != null)
+				view = view.tailSet(new IndexKey(after.getSortValue(), ((Number) after.getId()).intValue()), false);
+			Iterator<IndexKey> keys = view.iterator();
+			// wpis indeksu wskazuje id; pomijamy wpisy nieaktualne (wiersz usunięty lub zmieniony)
+			return new Iterator<>() {
+				private PersonRow next = advance();
+
+				private PersonRow advance() {
+					while (keys.hasNext()) {
+						IndexKey key = keys.next();
+						PersonRow row = rows.get(key.id());
+						if (row != null && VALUE_ORDER.compare(row.get(column), key.value()) == 0)
+							return row;
+					}
+					return null;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public PersonRow next() {
+					PersonRow current = next;
+					next = advance();
+					return current;
+				}
+			};
+		}
+		// kolumna bez indeksu: sortowanie kopii pasujących wierszy
+		Comparator<PersonRow> order = Comparator.comparing((PersonRow row) -> row.get(column), VALUE_ORDER)
+				.thenComparingInt(PersonRow::id);
+		if (!asc)
+			order = order.reversed();
+		Stream<PersonRow> candidates = stream(kind).filter(row -> filter.matches(row::get));
+		if (after != null) {
+			int afterId = ((Number) after.getId()).intValue();
+			candidates = candidates.filter(row -> {
+				int cmp = VALUE_ORDER.compare(row.get(column), after.getSortValue());
+				if (cmp == 0)
+					cmp = Integer.compare(row.id(), afterId);
+				return asc ? cmp > 0 : cmp < 0;
+			});
+		}
+		return candidates.sorted(order).iterator();
+	}
+
+	private void index(PersonRow row) {
+		for (Map.Entry<String, ConcurrentSkipListSet<IndexKey>> e : indexes.entrySet())
+			e.getValue().add(new IndexKey(row.get(e.getKey()), row.id()));
+	}
+
+	private void unindex(PersonRow row) {
+		for (Map.Entry<String, ConcurrentSkipListSet<IndexKey>> e : indexes.entrySet())
+			e.getValue().remove(new IndexKey(row.get(e.getKey()), row.id()));
+	}
+
+	private Object lock(int id) {
+		return locks[id & (LOCK_STRIPES - 1)];
+	}
+
+	private static boolean visible(PersonRow row, String kind) {
+		return kind == null || kind.equals(row.kind());
+	}
+
+	private static String externalKey(String kind, String externalId) {
+		return kind + '\u0000' + externalId;
+	}
+}
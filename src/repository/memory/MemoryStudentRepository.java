@@ -0,0 +1,29 @@
+package repository.memory;
+
+import model.Student;
+import repository.StudentRepository;
+
+/**
+ * Repozytorium studentów w pamięci (wiersze kind = 'STUDENT').
+ */
+public class MemoryStudentRepository extends MemoryRepository<Student> implements StudentRepository {
+
+	public MemoryStudentRepository(PersonStore store) {
+		super(store, "STUDENT", "STUDENT", "Student");
+	}
+
+	@Override
+	Student toEntity(PersonRow row) {
+		Student student = new Student(row.id(), row.name(), row.surname(), row.age(), row.dateOfBirth(),
+				row.startDate(), row.university(), row.year());
+		student.setVersion(row.version());
+		student.setExternalId(row.externalId());
+		student.markClean();
+		return student;
+	}
+
+	@Override
+	PersonRow withColumns(PersonRow row, Student entity) {
+		return row.withStudent(entity.getUniversity(), entity.getYear());
+	}
+}
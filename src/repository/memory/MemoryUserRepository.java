@@ -0,0 +1,114 @@
+package repository.memory;
+
+import model.Role;
+import model.User;
+import repository.UserRepository;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Użytkownicy w pamięci - dla trybów bez bazy (-Dapp.storage=memory|mapped).
+ * Konta (także zmienione hasła) nie przeżywają restartu.
+ *
+ * Jak w tabeli users: nazwa użytkownika jest unikalna, a odczyt zwraca nowy
+ * obiekt - zmiany zwróconego użytkownika nie trafiają do repozytorium bez
+ * wywołania metody zapisu.
+ */
+public class MemoryUserRepository implements UserRepository {
+
+	private final MemoryRoleRepository roles;
+	// chronione przez this - repozytorium jest małe i rzadko zapisywane
+	private final Map<Integer, User> users = new HashMap<>();
+	private final Map<String, Integer> usernames = new HashMap<>();
+	private int sequence;
+
+	public MemoryUserRepository(MemoryRoleRepository roles) {
+		this.roles = roles;
+	}
+
+	@Override
+	public synchronized User save(User user) throws SQLIntegrityConstraintViolationException {
+		if (usernames.containsKey(user.getUsername()))
+			throw new SQLIntegrityConstraintViolationException(
+					"Duplicate entry '" + user.getUsername() + "' for key 'username'");
+		user.setId(++sequence);
+		users.put(user.getId(), copy(user));
+		usernames.put(user.getUsername(), user.getId());
+		return user;
+	}
+
+	@Override
+	public synchronized Optional<User> findById(Integer id) {
+		return Optional.ofNullable(users.get(id)).map(MemoryUserRepository::copy);
+	}
+
+	@Override
+	public synchronized Optional<User> findByUsername(String username) {
+		Integer id = usernames.get(username);
+		return id == null ? Optional.empty() : findById(id);
+	}
+
+	@Override
+	public synchronized boolean deleteById(Integer id) {
+		User removed = users.remove(id);
+		if (removed == null)
+			return false;
+		usernames.remove(removed.getUsername());
+		return true;
+	}
+
+	@Override
+	public void assignRole(Integer userId, Integer roleId) {
+		assignRoles(userId, List.of(roleId));
+	}
+
+	// jak INSERT IGNORE do user_roles: przypisana już rola jest pomijana
+	@Override
+	public synchronized void assignRoles(Integer userId, Collection<Integer> roleIds) {
+		User user = users.get(userId);
+		if (user == null)
+			return;
+		for (Integer roleId : roleIds) {
+			String name = roles.nameById(roleId);
+			if (name == null)
+				throw new IllegalArgumentException("Role not found: " + roleId);
+			if (user.getRoles().stream().noneMatch(r -> roleId.equals(r.getId())))
+				user.getRoles().add(new Role(roleId, name));
+		}
+	}
+
+	@Override
+	public synchronized void updatePasswordByUsername(String username, byte[] passwordHash, byte[] salt,
+			boolean mustChange) {
+		Integer id = usernames.get(username);
+		if (id == null)
+			return;
+		User user = users.get(id);
+		user.setPasswordHash(passwordHash);
+		user.setSalt(salt);
+		user.setMustChangePassword(mustChange);
+		user.setUpdatedAt(LocalDate.now());
+	}
+
+	private static User copy(User user) {
+		User copy = new User(user.getId(), user.getUsername(), user.getPasswordHash(), user.getSalt());
+		copy.setEnabled(user.isEnabled());
+		copy.setMustChangePassword(user.isMustChangePassword());
+		copy.setCreatedAt(user.getCreatedAt());
+		copy.setUpdatedAt(user.getUpdatedAt());
+		Set<Role> roles = new HashSet<>();
+		if (user.getRoles() != null)
+			for (Role role : user.getRoles())
+				roles.add(new Role(role.getId(), role.getName()));
+		copy.setRoles(roles);
+		return copy;
+	}
+}
@@ -0,0 +1,65 @@
+package repository.memory;
+
+import model.Person;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Niemutowalny wiersz tabeli persons w pamięci. Zmiana rekordu podmienia
+ * cały wiersz, więc czytelnik bez blokad widzi zawsze spójny stan.
+ */
+record PersonRow(int id, String kind, String name, String surname, Integer age, LocalDate dateOfBirth,
+		LocalDate startDate, Double salary, String position, String university, Integer year, String externalId,
+		int version) {
+
+	/** Kolumny dostępne do projekcji (jak PROJECTABLE_COLUMNS w JdbcRepository) */
+	static final Set<String> COLUMNS = Set.of("id", "name", "surname", "age", "date_of_birth", "start_date", "salary",
+			"position", "university", "year", "version");
+
+	/** Kolumny dostępne do sortowania - bez wersji (jak SORTABLE_COLUMNS w JdbcRepository) */
+	static final Set<String> SORTABLE_COLUMNS = Set.of("id", "name", "surname", "age", "date_of_birth", "start_date",
+			"salary", "position", "university", "year");
+
+	/** Nowy wiersz z polami wspólnymi encji (wersja 0, bez pól podtypów) */
+	static PersonRow of(int id, String kind, Person p) {
+		return new PersonRow(id, kind, p.getName(), p.getSurname(), p.getAge(), p.getDateOfBirth(), p.getStartDate(),
+				null, null, null, null, p.getExternalId(), 0);
+	}
+
+	/** Kolejna wersja wiersza z polami wspólnymi encji (z external_id); kind i pola podtypów bez zmian */
+	PersonRow withPerson(Person p) {
+		return new PersonRow(id, kind, p.getName(), p.getSurname(), p.getAge(), p.getDateOfBirth(), p.getStartDate(),
+				salary, position, university, year, p.getExternalId(), version + 1);
+	}
+
+	PersonRow withEmployee(Double salary, String position) {
+		return new PersonRow(id, kind, name, surname, age, dateOfBirth, startDate, salary, position, university, year,
+				externalId, version);
+	}
+
+	PersonRow withStudent(String university, Integer year) {
+		return new PersonRow(id, kind, name, surname, age, dateOfBirth, startDate, salary, position, university, year,
+				externalId, version);
+	}
+
+	/** Wartość kolumny po nazwie (nazwy jak w tabeli persons) */
+	Object get(String column) {
+		return switch (column) {
+		case "id" -> id;
+		case "kind" -> kind;
+		case "name" -> name;
+		case "surname" -> surname;
+		case "age" -> age;
+		case "date_of_birth" -> dateOfBirth;
+		case "start_date" -> startDate;
+		case "salary" -> salary;
+		case "position" -> position;
+		case "university" -> university;
+		case "year" -> year;
+		case "external_id" -> externalId;
+		case "version" -> version;
+		default -> throw new IllegalArgumentException("Unknown column: " + column);
+		};
+	}
+}
@@ -0,0 +1,64 @@
+package repository.memory;
+
+import repository.Keyset;
+import repository.Specification;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Magazyn wierszy tabeli persons bez bazy danych, na którym pracują
+ * repozytoria z tego pakietu: {@link MemoryStore} (na stercie) albo
+ * {@link MappedStore} (kolumny w plikach mapowanych do pamięci).
+ */
+public abstract sealed class PersonStore permits MemoryStore, MappedStore {
+
+	/** Wynik zapisu z warunkiem na wersję */
+	enum Outcome {
+		DONE, MISSING, STALE
+	}
+
+	PersonStore() {
+	}
+
+	abstract int nextId();
+
+	/** Wiersz o id lub null, gdy brak (albo inny rodzaj niż kind != null) */
+	abstract PersonRow get(int id, String kind);
+
+	abstract Integer idByExternalId(String kind, String externalId);
+
+	/** Wstawia nowy wiersz; duplikat (kind, external_id) jak naruszenie UNIQUE w bazie */
+	abstract void insert(PersonRow row) throws SQLIntegrityConstraintViolationException;
+
+	/**
+	 * Podmienia wiersz na wynik funkcji.
+	 *
+	 * @param kind            rodzaj, który musi mieć wiersz (null = dowolny)
+	 * @param expectedVersion wymagana wersja lub null (bez kontroli wersji)
+	 * @throws SQLIntegrityConstraintViolationException nowy external_id jest już zajęty
+	 */
+	abstract Outcome update(int id, String kind, Integer expectedVersion, UnaryOperator<PersonRow> change)
+			throws SQLIntegrityConstraintViolationException;
+
+	abstract Outcome delete(int id, String kind, Integer expectedVersion);
+
+	/** Liczba wierszy rodzaju (null = wszystkie) spełniających filtr */
+	abstract long count(String kind, Specification filter);
+
+	/** Leniwy strumień wierszy danego rodzaju w kolejności id */
+	abstract Stream<PersonRow> stream(String kind);
+
+	/**
+	 * Wiersze w kolejności (column, id), zaczynając za kursorem.
+	 *
+	 * @param column kolumna z {@link PersonRow#SORTABLE_COLUMNS}
+	 * @param after  kursor lub null (od początku)
+	 * @param skip   liczba pasujących wierszy do pominięcia (OFFSET)
+	 * @param limit  maksymalna liczba zwróconych wierszy
+	 */
+	abstract List<PersonRow> scan(String kind, Specification filter, String column, boolean asc, Keyset after,
+			int skip, int limit);
+}
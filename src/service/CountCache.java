@@ -0,0 +1,149 @@
+package service;
+
+import repository.Page;
+import repository.PageRequest;
+import utils.LoggerUtil;
+import utils.concurrent.AppExecutors;
+import utils.concurrent.EventBus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Licznik rekordów trzymany w warstwie serwisu, żeby stronicowanie nie robiło
+ * COUNT(*) (pełny skan indeksu w InnoDB) przy każdym przeładowaniu.
+ *
+ * Zapisy przez serwisy zgłaszają zmianę przez {@link #recordChange}, a każdy
+ * cache poprawia swoją wartość. Tabela persons jest wspólna, więc cache osób
+ * (wszystkie rodzaje) reaguje też na pracowników i studentów. Zmiany spoza
+ * aplikacji wyrównuje cykliczne przeliczenie z bazy.
+ */
+final class CountCache {
+
+	static final long UNKNOWN = -1;
+
+	private static final long RECONCILE_INTERVAL_SECONDS = 5 * 60;
+
+	/** Odczyt prawdziwej liczby z bazy */
+	@FunctionalInterface
+	interface Loader {
+		long load() throws Exception;
+	}
+
+	/** Pobranie strony dla podanego żądania */
+	@FunctionalInterface
+	interface PageQuery<P> {
+		Page<P> fetch(PageRequest request) throws Exception;
+	}
+
+	/** kind == null: zmiana wiersza nieznanego rodzaju (np. usunięcie po samym id) */
+	private record Changed(String kind, long delta) {
+	}
+
+	private final String name;
+	private final String kind;
+	private final Loader loader;
+
+	// oba pola chronione przez this; generation rośnie przy każdej zmianie, żeby
+	// wynik COUNT rozpoczętego przed zmianą nie nadpisał nowszej wartości
+	private long value = UNKNOWN;
+	private long generation;
+
+	/**
+	 * @param kind rodzaj (wartość kolumny kind) liczonych rekordów albo null,
+	 *             gdy liczone są wszystkie
+	 */
+	CountCache(String name, String kind, Loader loader) {
+		this.name = name;
+		this.kind = kind;
+		this.loader = loader;
+		EventBus.register(Changed.class, this::onChanged);
+		AppExecutors.SCHEDULED_EXECUTOR.scheduleWithFixedDelay(this::scheduleReconcile, RECONCILE_INTERVAL_SECONDS,
+				RECONCILE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/** Zgłasza dodanie (delta > 0) lub usunięcie (delta < 0) rekordów danego rodzaju */
+	static void recordChange(String kind, long delta) {
+		if (delta != 0)
+			EventBus.post(new Changed(kind, delta));
+	}
+
+	/** Wartość z cache bez dostępu do bazy lub UNKNOWN */
+	synchronized long peek() {
+		return value;
+	}
+
+	/** Wartość z cache, a przy zimnym cache - COUNT z bazy */
+	long get() throws Exception {
+		long cached = peek();
+		return cached != UNKNOWN ? cached : refresh();
+	}
+
+	/**
+	 * Strona z totalem: przy ciepłym cache zapytanie idzie bez podzapytania
+	 * COUNT, a total pochodzi z cache; przy zimnym - total z zapytania zasila
+	 * cache.
+	 */
+	<P> Page<P> page(PageRequest request, PageQuery<P> query) throws Exception {
+		// cache trzyma liczbę wszystkich rekordów - total z filtrem liczy baza
+		if (!request.isWithTotal() || !request.getFilter().isEmpty())
+			return query.fetch(request);
+		long cached;
+		long observed;
+		synchronized (this) {
+			cached = value;
+			observed = generation;
+		}
+		if (cached != UNKNOWN) {
+			Page<P> page = query.fetch(request.withoutTotal());
+			return new Page<>(page.getContent(), page.getNext(), cached);
+		}
+		Page<P> page = query.fetch(request);
+		if (page.hasTotal())
+			store(observed, page.getTotal());
+		return page;
+	}
+
+	private long refresh() throws Exception {
+		long observed;
+		synchronized (this) {
+			observed = generation;
+		}
+		long loaded = loader.load();
+		store(observed, loaded);
+		return loaded;
+	}
+
+	private synchronized void store(long observedGeneration, long loaded) {
+		if (generation != observedGeneration)
+			return;
+		if (value != UNKNOWN && value != loaded)
+			LoggerUtil.info("Count cache '" + name + "' reconciled: " + value + " -> " + loaded);
+		value = loaded;
+	}
+
+	private synchronized void onChanged(Changed event) {
+		boolean affected = kind == null || event.kind() == null || kind.equals(event.kind());
+		if (!affected)
+			return;
+		generation++;
+		if (value == UNKNOWN)
+			return;
+		if (kind != null && event.kind() == null)
+			value = UNKNOWN; // nie wiadomo, czy usunięty wiersz był tego rodzaju
+		else
+			value = Math.max(0, value + event.delta());
+	}
+
+	private void scheduleReconcile() {
+		if (peek() == UNKNOWN)
+			return;
+		// COUNT idzie na pulę DB, wątek schedulera tylko zleca
+		AppExecutors.DB_EXECUTOR.execute(() -> {
+			try {
+				refresh();
+			} catch (Exception ex) {
+				LoggerUtil.error("Count cache '" + name + "' reconcile failed", ex);
+			}
+		});
+	}
+}
@@ -1,17 +1,28 @@
 package service;
 
 import model.Employee;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface EmployeeService {
     CompletableFuture<Employee> create(Employee employee);
     CompletableFuture<Optional<Employee>> findById(Integer id);
+    CompletableFuture<List<Employee>> findAllById(Collection<Integer> ids); // kilka zapytań IN zamiast jednego na id
     CompletableFuture<List<Employee>> findAll(int page, int size, String sortBy, boolean asc);
+    CompletableFuture<Page<Employee>> findPage(PageRequest request);
+    CompletableFuture<Page<RowView>> findRows(List<String> columns, PageRequest request);
     CompletableFuture<List<Employee>> findAll();
+    CompletableFuture<Void> forEachEntity(Consumer<? super Employee> action); // strumieniowo, bez listy w pamięci
     CompletableFuture<Employee> update(Employee employee);
     CompletableFuture<Boolean> deleteById(Integer id);
+    CompletableFuture<Boolean> deleteById(Integer id, int expectedVersion); // OptimisticLockException przy konflikcie
     CompletableFuture<Long> count();
 }
 
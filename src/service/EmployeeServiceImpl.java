@@ -1,23 +1,32 @@
 package service;
 
 import model.Employee;
+import repository.OptimisticLockException;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
 import repository.EmployeeRepository;
 import security.AuthManager;
 import utils.LoggerUtil;
 import utils.Validator;
 import utils.concurrent.AppExecutors;
+import utils.concurrent.Cancellation;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class EmployeeServiceImpl implements EmployeeService {
 	private final EmployeeRepository repository;
+	private final CountCache countCache;
 
 	public EmployeeServiceImpl(EmployeeRepository repository) {
 		this.repository = repository;
+		this.countCache = new CountCache("employees", "EMPLOYEE", repository::count);
 	}
 
 	@Override
@@ -34,6 +43,7 @@ public class EmployeeServiceImpl implements EmployeeService {
 				employee.setUpdatedAt(LocalDate.now());
 
 				Employee saved = repository.save(employee);
+				CountCache.recordChange("EMPLOYEE", 1);
 				LoggerUtil.log(java.util.logging.Level.INFO, "Created employee: id=" + saved.getId() + " by user="
 						+ AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("CREATE_EMPLOYEE", "employee:" + saved.getId(),
@@ -48,12 +58,27 @@ public class EmployeeServiceImpl implements EmployeeService {
 
 	@Override
 	public CompletableFuture<Optional<Employee>> findById(Integer id) {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				Validator.requireNonNull(id, "id");
 				return repository.findById(id);
 			} catch (Exception e) {
-				LoggerUtil.error("Error finding employee", e);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding employee", e);
+				throw new RuntimeException(e);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<List<Employee>> findAllById(Collection<Integer> ids) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(ids, "ids");
+				return repository.findAllById(ids);
+			} catch (Exception e) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding employees by ids", e);
 				throw new RuntimeException(e);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -61,11 +86,40 @@ public class EmployeeServiceImpl implements EmployeeService {
 
 	@Override
 	public CompletableFuture<List<Employee>> findAll(int page, int size, String sortBy, boolean asc) {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				return repository.findAll(page, size, sortBy, asc);
 			} catch (Exception e) {
-				LoggerUtil.error("Error fetching employees", e);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching employees", e);
+				throw new RuntimeException(e);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<Page<Employee>> findPage(PageRequest request) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(request, "request");
+				return countCache.page(request, repository::findPage);
+			} catch (Exception e) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching employees page", e);
+				throw new RuntimeException(e);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<Page<RowView>> findRows(List<String> columns, PageRequest request) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(request, "request");
+				return countCache.page(request, r -> repository.findRows(columns, r));
+			} catch (Exception e) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching employees rows", e);
 				throw new RuntimeException(e);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -73,14 +127,29 @@ public class EmployeeServiceImpl implements EmployeeService {
 
 	@Override
 	public CompletableFuture<List<Employee>> findAll() {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				return repository.findAll();
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding all employees", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding all employees", ex);
 				throw new RuntimeException(ex);
 			}
-		}, AppExecutors.DB_EXECUTOR);
+		}, AppExecutors.DB_EXECUTOR, 0); // pełny odczyt - bez timeoutu, tylko anulowanie
+	}
+
+	@Override
+	public CompletableFuture<Void> forEachEntity(Consumer<? super Employee> action) {
+		return Cancellation.runAsync(() -> {
+			try {
+				Validator.requireNonNull(action, "action");
+				repository.forEachEntity(action);
+			} catch (Exception e) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error streaming employees", e);
+				throw new RuntimeException(e);
+			}
+		}, AppExecutors.DB_EXECUTOR, 0); // pełny odczyt - bez timeoutu, tylko anulowanie
 	}
 
 	@Override
@@ -100,6 +169,9 @@ public class EmployeeServiceImpl implements EmployeeService {
 				LoggerUtil.audit("UPDATE_EMPLOYEE", "employee:" + updated.getId(),
 						"position=" + updated.getPosition() + " salary=" + updated.getSalary());
 				return updated;
+			} catch (OptimisticLockException e) {
+				LoggerUtil.warn("Concurrent modification of employee: " + e.getMessage());
+				throw e;
 			} catch (Exception e) {
 				LoggerUtil.error("Error updating employee", e);
 				throw new RuntimeException(e);
@@ -109,14 +181,30 @@ public class EmployeeServiceImpl implements EmployeeService {
 
 	@Override
 	public CompletableFuture<Boolean> deleteById(Integer id) {
+		return delete(id, null);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deleteById(Integer id, int expectedVersion) {
+		return delete(id, expectedVersion);
+	}
+
+	// expectedVersion == null: usunięcie bez kontroli wersji
+	private CompletableFuture<Boolean> delete(Integer id, Integer expectedVersion) {
 		return CompletableFuture.supplyAsync(() -> {
 			try {
 				Validator.requireNonNull(id, "id");
-				boolean deleted = repository.deleteById(id);
+				boolean deleted = expectedVersion == null ? repository.deleteById(id)
+						: repository.deleteById(id, expectedVersion);
+				if (deleted)
+					CountCache.recordChange("EMPLOYEE", -1);
 				LoggerUtil.log(java.util.logging.Level.INFO,
 						"Deleted employee id=" + id + " by user=" + AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("DELETE_EMPLOYEE", "employee:" + id, "deleted=" + deleted);
 				return deleted;
+			} catch (OptimisticLockException e) {
+				LoggerUtil.warn("Concurrent modification of employee: " + e.getMessage());
+				throw e;
 			} catch (Exception e) {
 				LoggerUtil.error("Error deleting employee", e);
 				throw new RuntimeException(e);
@@ -126,11 +214,15 @@ public class EmployeeServiceImpl implements EmployeeService {
 
 	@Override
 	public CompletableFuture<Long> count() {
-		return CompletableFuture.supplyAsync(() -> {
+		long cached = countCache.peek();
+		if (cached != CountCache.UNKNOWN)
+			return CompletableFuture.completedFuture(cached);
+		return Cancellation.supplyAsync(() -> {
 			try {
-				return repository.count();
+				return countCache.get();
 			} catch (Exception e) {
-				LoggerUtil.error("Error counting employees", e);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error counting employees", e);
 				throw new RuntimeException(e);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -1,17 +1,28 @@
 package service;
 
 import model.Person;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface PersonService {
     CompletableFuture<Person> create(Person person);
     CompletableFuture<Optional<Person>> findById(Integer id);
+    CompletableFuture<List<Person>> findAllById(Collection<Integer> ids); // kilka zapytań IN zamiast jednego na id
     CompletableFuture<List<Person>> findAll(int page, int size, String sortBy, boolean asc);
+    CompletableFuture<Page<Person>> findPage(PageRequest request);
+    CompletableFuture<Page<RowView>> findRows(List<String> columns, PageRequest request);
     CompletableFuture<List<Person>> findAll();
+    CompletableFuture<Void> forEachEntity(Consumer<? super Person> action); // strumieniowo, bez listy w pamięci
     CompletableFuture<Person> update(Person person);
     CompletableFuture<Boolean> deleteById(Integer id);
+    CompletableFuture<Boolean> deleteById(Integer id, int expectedVersion); // OptimisticLockException przy konflikcie
     CompletableFuture<Long> count();
 }
 
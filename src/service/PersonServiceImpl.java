@@ -1,24 +1,34 @@
 package service;
 
 import model.Person;
+import repository.OptimisticLockException;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
 import repository.PersonRepository;
 import security.AuthManager;
 import utils.LoggerUtil;
 import utils.Validator;
 import utils.concurrent.AppExecutors;
+import utils.concurrent.Cancellation;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class PersonServiceImpl implements PersonService {
 
 	private final PersonRepository repository;
+	private final CountCache countCache;
 
 	public PersonServiceImpl(PersonRepository repository) {
 		this.repository = repository;
+		// persons liczy wszystkie rodzaje (także pracowników i studentów)
+		this.countCache = new CountCache("persons", null, repository::count);
 	}
 
 	@Override
@@ -35,6 +45,7 @@ public class PersonServiceImpl implements PersonService {
 				person.setUpdatedAt(LocalDate.now());
 
 				Person saved = repository.save(person);
+				CountCache.recordChange("PERSON", 1);
 				LoggerUtil.log(java.util.logging.Level.INFO, "Created person: id=" + saved.getId() + " by user="
 						+ AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("CREATE_PERSON", "person:" + saved.getId(),
@@ -49,12 +60,27 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public CompletableFuture<Optional<Person>> findById(Integer id) {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				Validator.requireNonNull(id, "id");
 				return repository.findById(id);
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding person by id", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding person by id", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<List<Person>> findAllById(Collection<Integer> ids) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(ids, "ids");
+				return repository.findAllById(ids);
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding persons by ids", ex);
 				throw new RuntimeException(ex);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -62,11 +88,40 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public CompletableFuture<List<Person>> findAll(int page, int size, String sortBy, boolean asc) {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				return repository.findAll(page, size, sortBy, asc);
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding persons", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding persons", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<Page<Person>> findPage(PageRequest request) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(request, "request");
+				return countCache.page(request, repository::findPage);
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching persons page", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<Page<RowView>> findRows(List<String> columns, PageRequest request) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(request, "request");
+				return countCache.page(request, r -> repository.findRows(columns, r));
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching persons rows", ex);
 				throw new RuntimeException(ex);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -74,14 +129,29 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public CompletableFuture<List<Person>> findAll() {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				return repository.findAll();
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding all persons", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding all persons", ex);
 				throw new RuntimeException(ex);
 			}
-		}, AppExecutors.DB_EXECUTOR);
+		}, AppExecutors.DB_EXECUTOR, 0); // pełny odczyt - bez timeoutu, tylko anulowanie
+	}
+
+	@Override
+	public CompletableFuture<Void> forEachEntity(Consumer<? super Person> action) {
+		return Cancellation.runAsync(() -> {
+			try {
+				Validator.requireNonNull(action, "action");
+				repository.forEachEntity(action);
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error streaming persons", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR, 0); // pełny odczyt - bez timeoutu, tylko anulowanie
 	}
 
 	@Override
@@ -101,6 +171,9 @@ public class PersonServiceImpl implements PersonService {
 				LoggerUtil.audit("UPDATE_PERSON", "person:" + updated.getId(),
 						"name=" + updated.getName() + " surname=" + updated.getSurname());
 				return updated;
+			} catch (OptimisticLockException ex) {
+				LoggerUtil.warn("Concurrent modification of person: " + ex.getMessage());
+				throw ex;
 			} catch (Exception ex) {
 				LoggerUtil.error("Error updating person", ex);
 				throw new RuntimeException(ex);
@@ -110,14 +183,30 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public CompletableFuture<Boolean> deleteById(Integer id) {
+		return delete(id, null);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deleteById(Integer id, int expectedVersion) {
+		return delete(id, expectedVersion);
+	}
+
+	// expectedVersion == null: usunięcie bez kontroli wersji
+	private CompletableFuture<Boolean> delete(Integer id, Integer expectedVersion) {
 		return CompletableFuture.supplyAsync(() -> {
 			try {
 				Validator.requireNonNull(id, "id");
-				boolean deleted = repository.deleteById(id);
+				boolean deleted = expectedVersion == null ? repository.deleteById(id)
+						: repository.deleteById(id, expectedVersion);
+				if (deleted)
+					CountCache.recordChange(null, -1); // rodzaj usuniętego wiersza nieznany
 				LoggerUtil.log(java.util.logging.Level.INFO,
 						"Deleted person id=" + id + " by user=" + AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("DELETE_PERSON", "person:" + id, "deleted=" + deleted);
 				return deleted;
+			} catch (OptimisticLockException ex) {
+				LoggerUtil.warn("Concurrent modification of person: " + ex.getMessage());
+				throw ex;
 			} catch (Exception ex) {
 				LoggerUtil.error("Error deleting person", ex);
 				throw new RuntimeException(ex);
@@ -127,11 +216,15 @@ public class PersonServiceImpl implements PersonService {
 
 	@Override
 	public CompletableFuture<Long> count() {
-		return CompletableFuture.supplyAsync(() -> {
+		long cached = countCache.peek();
+		if (cached != CountCache.UNKNOWN)
+			return CompletableFuture.completedFuture(cached);
+		return Cancellation.supplyAsync(() -> {
 			try {
-				return repository.count();
+				return countCache.get();
 			} catch (Exception ex) {
-				LoggerUtil.error("Error counting persons", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error counting persons", ex);
 				throw new RuntimeException(ex);
 			}
 		}, AppExecutors.DB_EXECUTOR);
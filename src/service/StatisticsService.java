@@ -1,13 +1,12 @@
 package service;
 
 import model.Person;
-import model.Employee;
-import model.Student;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import dto.statistics.AgeDistributionDTO;
 
@@ -24,40 +23,30 @@ public class StatisticsService {
 		this.studentService = studentService;
 	}
 
-	private Map<Integer, Long> groupByAge(List<Integer> ages) {
-		return ages.stream().filter(a -> a != null && a > 0 && a < 150)
-				.collect(Collectors.groupingBy(a -> a, Collectors.counting()));
-	}
-
-	private List<Integer> extractAgesFromPeople(List<? extends Object> list) {
-		return list.stream().map(obj -> {
-			try {
-				Object v = obj.getClass().getMethod("getAge").invoke(obj);
-				return v == null ? null : (Integer) v;
-			} catch (Exception e) {
-				return null;
-			}
-		}).collect(Collectors.toList());
+	/**
+	 * Zlicza wiek rekordów przesyłanych strumieniowo - żadna pełna lista nie
+	 * trafia do pamięci, niezależnie od rozmiaru tabeli.
+	 */
+	private CompletableFuture<Map<Integer, Long>> ageDistribution(
+			Function<Consumer<Person>, CompletableFuture<Void>> source) {
+		// akcję wywołuje jeden wątek DB; wynik czytamy dopiero po zakończeniu future
+		Map<Integer, Long> counts = new HashMap<>();
+		return source.apply(p -> {
+			Integer a = p.getAge();
+			if (a != null && a > 0 && a < 150)
+				counts.merge(a, 1L, Long::sum);
+		}).thenApply(v -> counts);
 	}
 
 	/**
 	 * Asynchroniczne ładowanie i budowanie DTO
 	 */
 	public CompletableFuture<AgeDistributionDTO> loadAgeDistributionAsync() {
-		CompletableFuture<List<Person>> fPersons = personService.findAll();
-		CompletableFuture<List<Employee>> fEmployees = employeeService.findAll();
-		CompletableFuture<List<Student>> fStudents = studentService.findAll();
-
-		return CompletableFuture.allOf(fPersons, fEmployees, fStudents).thenApply(v -> {
-			List<Person> persons = fPersons.join();
-			List<Employee> employees = fEmployees.join();
-			List<Student> students = fStudents.join();
-
-			Map<Integer, Long> per = groupByAge(extractAgesFromPeople(persons));
-			Map<Integer, Long> emp = groupByAge(extractAgesFromPeople(employees));
-			Map<Integer, Long> stu = groupByAge(extractAgesFromPeople(students));
+		CompletableFuture<Map<Integer, Long>> fPersons = ageDistribution(personService::forEachEntity);
+		CompletableFuture<Map<Integer, Long>> fEmployees = ageDistribution(employeeService::forEachEntity);
+		CompletableFuture<Map<Integer, Long>> fStudents = ageDistribution(studentService::forEachEntity);
 
-			return new AgeDistributionDTO(per, emp, stu);
-		});
+		return CompletableFuture.allOf(fPersons, fEmployees, fStudents)
+				.thenApply(v -> new AgeDistributionDTO(fPersons.join(), fEmployees.join(), fStudents.join()));
 	}
 }
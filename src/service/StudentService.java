@@ -1,16 +1,27 @@
 package service;
 
 import model.Student;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface StudentService {
     CompletableFuture<Student> create(Student student);
     CompletableFuture<Optional<Student>> findById(Integer id);
+    CompletableFuture<List<Student>> findAllById(Collection<Integer> ids); // kilka zapytań IN zamiast jednego na id
     CompletableFuture<List<Student>> findAll(int page, int size, String sortBy, boolean asc);
+    CompletableFuture<Page<Student>> findPage(PageRequest request);
+    CompletableFuture<Page<RowView>> findRows(List<String> columns, PageRequest request);
     CompletableFuture<List<Student>> findAll();
+    CompletableFuture<Void> forEachEntity(Consumer<? super Student> action); // strumieniowo, bez listy w pamięci
     CompletableFuture<Student> update(Student student);
     CompletableFuture<Boolean> deleteById(Integer id);
+    CompletableFuture<Boolean> deleteById(Integer id, int expectedVersion); // OptimisticLockException przy konflikcie
     CompletableFuture<Long> count();
 }
@@ -1,24 +1,33 @@
 package service;
 
 import model.Student;
+import repository.OptimisticLockException;
+import repository.Page;
+import repository.PageRequest;
+import repository.RowView;
 import repository.StudentRepository;
 import security.AuthManager;
 import utils.LoggerUtil;
 import utils.Validator;
 import utils.concurrent.AppExecutors;
+import utils.concurrent.Cancellation;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class StudentServiceImpl implements StudentService {
 
 	private final StudentRepository repository;
+	private final CountCache countCache;
 
 	public StudentServiceImpl(StudentRepository repository) {
 		this.repository = repository;
+		this.countCache = new CountCache("students", "STUDENT", repository::count);
 	}
 
 	@Override
@@ -37,6 +46,7 @@ public class StudentServiceImpl implements StudentService {
 				student.setUpdatedAt(LocalDate.now());
 
 				Student saved = repository.save(student);
+				CountCache.recordChange("STUDENT", 1);
 				LoggerUtil.log(java.util.logging.Level.INFO, "Created student: id=" + saved.getId() + " by user="
 						+ AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("CREATE_STUDENT", "student:" + saved.getId(),
@@ -51,12 +61,27 @@ public class StudentServiceImpl implements StudentService {
 
 	@Override
 	public CompletableFuture<Optional<Student>> findById(Integer id) {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				Validator.requireNonNull(id, "id");
 				return repository.findById(id);
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding student", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding student", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<List<Student>> findAllById(Collection<Integer> ids) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(ids, "ids");
+				return repository.findAllById(ids);
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding students by ids", ex);
 				throw new RuntimeException(ex);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -64,11 +89,40 @@ public class StudentServiceImpl implements StudentService {
 
 	@Override
 	public CompletableFuture<List<Student>> findAll(int page, int size, String sortBy, boolean asc) {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				return repository.findAll(page, size, sortBy, asc);
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding students", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding students", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<Page<Student>> findPage(PageRequest request) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(request, "request");
+				return countCache.page(request, repository::findPage);
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching students page", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR);
+	}
+
+	@Override
+	public CompletableFuture<Page<RowView>> findRows(List<String> columns, PageRequest request) {
+		return Cancellation.supplyAsync(() -> {
+			try {
+				Validator.requireNonNull(request, "request");
+				return countCache.page(request, r -> repository.findRows(columns, r));
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error fetching students rows", ex);
 				throw new RuntimeException(ex);
 			}
 		}, AppExecutors.DB_EXECUTOR);
@@ -76,14 +130,29 @@ public class StudentServiceImpl implements StudentService {
 
 	@Override
 	public CompletableFuture<List<Student>> findAll() {
-		return CompletableFuture.supplyAsync(() -> {
+		return Cancellation.supplyAsync(() -> {
 			try {
 				return repository.findAll();
 			} catch (Exception ex) {
-				LoggerUtil.error("Error finding all students", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error finding all students", ex);
 				throw new RuntimeException(ex);
 			}
-		}, AppExecutors.DB_EXECUTOR);
+		}, AppExecutors.DB_EXECUTOR, 0); // pełny odczyt - bez timeoutu, tylko anulowanie
+	}
+
+	@Override
+	public CompletableFuture<Void> forEachEntity(Consumer<? super Student> action) {
+		return Cancellation.runAsync(() -> {
+			try {
+				Validator.requireNonNull(action, "action");
+				repository.forEachEntity(action);
+			} catch (Exception ex) {
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error streaming students", ex);
+				throw new RuntimeException(ex);
+			}
+		}, AppExecutors.DB_EXECUTOR, 0); // pełny odczyt - bez timeoutu, tylko anulowanie
 	}
 
 	@Override
@@ -105,6 +174,9 @@ public class StudentServiceImpl implements StudentService {
 				LoggerUtil.audit("UPDATE_STUDENT", "student:" + updated.getId(),
 						"university=" + updated.getUniversity() + " year=" + updated.getYear());
 				return updated;
+			} catch (OptimisticLockException ex) {
+				LoggerUtil.warn("Concurrent modification of student: " + ex.getMessage());
+				throw ex;
 			} catch (Exception ex) {
 				LoggerUtil.error("Error updating student", ex);
 				throw new RuntimeException(ex);
@@ -114,14 +186,30 @@ public class StudentServiceImpl implements StudentService {
 
 	@Override
 	public CompletableFuture<Boolean> deleteById(Integer id) {
+		return delete(id, null);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deleteById(Integer id, int expectedVersion) {
+		return delete(id, expectedVersion);
+	}
+
+	// expectedVersion == null: usunięcie bez kontroli wersji
+	private CompletableFuture<Boolean> delete(Integer id, Integer expectedVersion) {
 		return CompletableFuture.supplyAsync(() -> {
 			try {
 				Validator.requireNonNull(id, "id");
-				boolean deleted = repository.deleteById(id);
+				boolean deleted = expectedVersion == null ? repository.deleteById(id)
+						: repository.deleteById(id, expectedVersion);
+				if (deleted)
+					CountCache.recordChange("STUDENT", -1);
 				LoggerUtil.log(java.util.logging.Level.INFO,
 						"Deleted student id=" + id + " by user=" + AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("DELETE_STUDENT", "student:" + id, "deleted=" + deleted);
 				return deleted;
+			} catch (OptimisticLockException ex) {
+				LoggerUtil.warn("Concurrent modification of student: " + ex.getMessage());
+				throw ex;
 			} catch (Exception ex) {
 				LoggerUtil.error("Error deleting student", ex);
 				throw new RuntimeException(ex);
@@ -131,11 +219,15 @@ public class StudentServiceImpl implements StudentService {
 
 	@Override
 	public CompletableFuture<Long> count() {
-		return CompletableFuture.supplyAsync(() -> {
+		long cached = countCache.peek();
+		if (cached != CountCache.UNKNOWN)
+			return CompletableFuture.completedFuture(cached);
+		return Cancellation.supplyAsync(() -> {
 			try {
-				return repository.count();
+				return countCache.get();
 			} catch (Exception ex) {
-				LoggerUtil.error("Error counting students", ex);
+				if (!Cancellation.isCurrentCancelled())
+					LoggerUtil.error("Error counting students", ex);
 				throw new RuntimeException(ex);
 			}
 		}, AppExecutors.DB_EXECUTOR);
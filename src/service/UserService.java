@@ -2,12 +2,16 @@ package service;
 
 import model.User;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 public interface UserService {
     CompletableFuture<User> createUser(String username, char[] password, boolean enabled);
     CompletableFuture<User> createUser(String username, char[] password, boolean enabled, boolean mustChange);
+    /** Tworzy użytkownika i nadaje mu role w jednej transakcji (jeden commit) */
+    CompletableFuture<User> createUser(String username, char[] password, boolean enabled, boolean mustChange,
+            Collection<String> roleNames);
     CompletableFuture<Optional<User>> findByUsername(String username);
     CompletableFuture<Boolean> authenticate(String username, char[] password);
     CompletableFuture<Void> assignRole(String username, String roleName);
@@ -1,24 +1,42 @@
 package service;
 
+import model.Role;
 import model.User;
 import repository.RoleRepository;
-import repository.UserRepositoryImpl;
+import repository.TransactionTemplate;
+import repository.UserRepository;
 import security.AuthManager;
 import utils.LoggerUtil;
 import utils.SecurityUtil;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 
 public class UserServiceImpl implements UserService {
-	private final UserRepositoryImpl repo;
+	private final UserRepository repo;
 	private final RoleRepository roleRepo;
+	// null = repozytoria bez transakcji (w pamięci) - praca wykonywana wprost
+	private final TransactionTemplate transactions;
 
-	public UserServiceImpl(UserRepositoryImpl repo, RoleRepository roleRepo) {
+	public UserServiceImpl(UserRepository repo, RoleRepository roleRepo, TransactionTemplate transactions) {
 		this.repo = repo;
 		this.roleRepo = roleRepo;
+		this.transactions = transactions;
+	}
+
+	/** Dla repozytoriów bez bazy (np. repository.memory) */
+	public UserServiceImpl(UserRepository repo, RoleRepository roleRepo) {
+		this(repo, roleRepo, null);
+	}
+
+	private <R> R inTransaction(TransactionTemplate.TransactionCallback<R> work) throws Exception {
+		return transactions == null ? work.doInTransaction() : transactions.execute(work);
 	}
 
 	@Override
@@ -29,6 +47,12 @@ public class UserServiceImpl implements UserService {
 	// overload: pozwala ustawić mustChange przy tworzeniu (użyteczne dla admina)
 	@Override
 	public CompletableFuture<User> createUser(String username, char[] password, boolean enabled, boolean mustChange) {
+		return createUser(username, password, enabled, mustChange, List.of());
+	}
+
+	@Override
+	public CompletableFuture<User> createUser(String username, char[] password, boolean enabled, boolean mustChange,
+			Collection<String> roleNames) {
 		return CompletableFuture.supplyAsync(() -> {
 			try {
 				byte[] salt = SecurityUtil.generateSalt();
@@ -42,11 +66,22 @@ public class UserServiceImpl implements UserService {
 				u.setCreatedAt(LocalDate.now());
 				u.setUpdatedAt(LocalDate.now());
 
-				User saved = repo.save(u);
+				// role i użytkownik w jednej transakcji - brak roli wycofuje utworzenie konta
+				User saved = inTransaction(() -> {
+					Set<Role> roles = new HashSet<>();
+					for (String roleName : roleNames) {
+						Integer roleId = roleRepo.findIdByName(roleName);
+						if (roleId == null)
+							throw new RuntimeException("Role not found: " + roleName);
+						roles.add(new Role(roleId, roleName));
+					}
+					u.setRoles(roles);
+					return repo.save(u);
+				});
 				LoggerUtil.log(java.util.logging.Level.INFO, "Created user: username=" + saved.getUsername()
 						+ " by user=" + AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("CREATE_USER", "user:" + saved.getUsername(),
-						"mustChange=" + saved.isMustChangePassword());
+						"mustChange=" + saved.isMustChangePassword() + ", roles=" + roleNames);
 				return saved;
 			} catch (Exception ex) {
 				LoggerUtil.error("Create user failed", ex);
@@ -81,22 +116,25 @@ public class UserServiceImpl implements UserService {
 
 	@Override
 	public CompletableFuture<Void> assignRole(String username, String roleName) {
-		return findByUsername(username).thenAccept(opt -> {
-			if (opt.isEmpty())
-				throw new RuntimeException("User not found");
-			User u = opt.get();
+		return CompletableFuture.runAsync(() -> {
 			try {
-				Integer roleId = roleRepo.findIdByName(roleName);
-				if (roleId == null)
-					throw new RuntimeException("Role not found");
-				repo.assignRole(u.getId(), roleId);
+				inTransaction(() -> {
+					User u = repo.findByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
+					Integer roleId = roleRepo.findIdByName(roleName);
+					if (roleId == null)
+						throw new RuntimeException("Role not found");
+					repo.assignRole(u.getId(), roleId);
+					return null;
+				});
 				LoggerUtil.log(java.util.logging.Level.INFO, "Assigned role " + roleName + " to user=" + username
 						+ " by " + AuthManager.get().getCurrentUsernameOrSystem());
 				LoggerUtil.audit("ASSIGN_ROLE", "user:" + username, "role=" + roleName);
+			} catch (RuntimeException e) {
+				throw e;
 			} catch (Exception e) {
 				throw new RuntimeException(e);
 			}
-		});
+		}, utils.concurrent.AppExecutors.DB_EXECUTOR);
 	}
 
 	@Override
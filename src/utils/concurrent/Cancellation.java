@@ -0,0 +1,119 @@
+package utils.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Anulowanie pracy zadania z {@link #supplyAsync}. cancel() zwróconego
+ * future nie tylko oznacza wynik jako anulowany, ale też wywołuje akcje
+ * zarejestrowane przez kod wykonywany w zadaniu (np. Statement.cancel() dla
+ * trwającego zapytania), więc porzucone zadanie zwalnia wątek i bazę od razu.
+ * Zadanie anulowane przed startem w ogóle się nie wykonuje.
+ *
+ * Zadanie niesie też domyślny timeout zapytań (sekundy, 0 = bez limitu).
+ */
+public final class Cancellation {
+
+    /** Domyślny timeout zapytań zadań anulowalnych (-Dapp.db.queryTimeout, sekundy) */
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = Integer.getInteger("app.db.queryTimeout", 30);
+
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+    private final int queryTimeoutSeconds;
+    private final Set<Runnable> actions = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    private Cancellation(int queryTimeoutSeconds) {
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+    }
+
+    /** Zakres anulowania bieżącego wątku albo null poza zadaniem z supplyAsync */
+    public static Cancellation current() {
+        return CURRENT.get();
+    }
+
+    /** Czy zadanie bieżącego wątku zostało anulowane (np. żeby nie logować błędu przerwanego zapytania) */
+    public static boolean isCurrentCancelled() {
+        Cancellation current = CURRENT.get();
+        return current != null && current.cancelled;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getQueryTimeoutSeconds() {
+        return queryTimeoutSeconds;
+    }
+
+    /**
+     * Rejestruje akcję wywoływaną przy anulowaniu. Akcję trzeba wyrejestrować
+     * po zakończeniu chronionej pracy. Jeśli zadanie jest już anulowane, akcja
+     * wykonuje się od razu.
+     */
+    public void onCancel(Runnable action) {
+        actions.add(action);
+        if (cancelled && actions.remove(action))
+            action.run();
+    }
+
+    public void remove(Runnable action) {
+        actions.remove(action);
+    }
+
+    private void cancel() {
+        cancelled = true;
+        for (Runnable action : actions)
+            if (actions.remove(action))
+                action.run();
+    }
+
+    /** Zadanie anulowalne z domyślnym timeoutem zapytań */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor) {
+        return supplyAsync(task, executor, DEFAULT_QUERY_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Jak CompletableFuture.supplyAsync, ale cancel() zwróconego future
+     * anuluje pracę zadania (tylko tego future - nie zależnych od niego
+     * thenApply / thenAccept).
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> task, Executor executor,
+            int queryTimeoutSeconds) {
+        Cancellation scope = new Cancellation(queryTimeoutSeconds);
+        CompletableFuture<T> future = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean result = super.cancel(mayInterruptIfRunning);
+                scope.cancel();
+                return result;
+            }
+        };
+        executor.execute(() -> {
+            if (future.isDone())
+                return;
+            CURRENT.set(scope);
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                // jak w CompletableFuture.supplyAsync - zależne etapy widzą CompletionException
+                future.completeExceptionally(t instanceof CompletionException ? t : new CompletionException(t));
+            } finally {
+                CURRENT.remove();
+            }
+        });
+        return future;
+    }
+
+    /** Wariant bez wyniku (np. przejście wszystkich encji) */
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor, int queryTimeoutSeconds) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        }, executor, queryTimeoutSeconds);
+    }
+}